@@ -14,6 +14,8 @@ import android.preference.PreferenceManager;
 import android.preference.SwitchPreference;
 import android.text.TextUtils;
 
+import java.util.concurrent.TimeUnit;
+
 import io.branch.search.BranchConfiguration;
 import io.branch.search.BranchSearch;
 
@@ -152,6 +154,7 @@ public class BranchPreferenceActivity extends PreferenceActivity {
         config.setUrl(getBranchUrlPreference(appContext));
         config.setBranchKey(getBranchKeyPreference(appContext));
         config.setLaunchIntentFlags(getBranchIntentFlags(appContext));
+        config.setQueryHintCacheMaxAge(TimeUnit.DAYS.toMillis(1));
 
         BranchSearch searchSDK = BranchSearch.init(appContext, config);
         return (searchSDK != null);
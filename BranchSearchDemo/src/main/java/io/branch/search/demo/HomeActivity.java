@@ -19,9 +19,11 @@ import android.widget.Toast;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import io.branch.search.BranchAutoSuggestRequest;
 import io.branch.search.BranchAutoSuggestResult;
+import io.branch.search.BranchConfiguration;
 import io.branch.search.BranchQueryHint;
 import io.branch.search.BranchQueryHintRequest;
 import io.branch.search.BranchQueryHintResult;
@@ -56,8 +58,11 @@ public class HomeActivity extends AppCompatActivity implements BFSearchBox.IKeyw
         branchSearchController = findViewById(R.id.recommendation_layout);
         imm = (InputMethodManager) this.getSystemService(Context.INPUT_METHOD_SERVICE);
 
-        // Initialize the Branch Search SDK
-        BranchSearch searchSDK = BranchSearch.init(getApplicationContext());
+        // Initialize the Branch Search SDK. Persisting query hints lets us show
+        // a hint right away on the next start, before the network responds.
+        BranchConfiguration config = new BranchConfiguration()
+                .setQueryHintCacheMaxAge(TimeUnit.DAYS.toMillis(1));
+        BranchSearch searchSDK = BranchSearch.init(getApplicationContext(), config);
         if (searchSDK == null) {
             Toast.makeText(this, R.string.sdk_not_initialized, Toast.LENGTH_LONG).show();
             finish();
@@ -201,6 +206,12 @@ public class HomeActivity extends AppCompatActivity implements BFSearchBox.IKeyw
         // locations in this demo app. For real apps, just pass locations to BranchSearch
         // as soon as you get them from your location component!
         applyLocation();
+        // Show the hints stored from the last run immediately, if any, while we refresh them.
+        BranchQueryHintResult cachedHints = BranchSearch.getInstance().getCachedQueryHints();
+        if (cachedHints != null) {
+            queryHints = cachedHints.getHints();
+            updateQueryHint();
+        }
         BranchQueryHintRequest request = BranchQueryHintRequest.create()
                 .setMaxResults(6);
         BranchSearch.getInstance().queryHint(request, new IBranchQueryHintEvents() {
@@ -21,6 +21,7 @@ import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
 
+import io.branch.search.BranchImageUrlResolver;
 import io.branch.search.BranchLinkResult;
 import io.branch.search.demo.R;
 
@@ -67,6 +68,8 @@ public class ContentDisplayHelper {
             if (icon_url == null || TextUtils.isEmpty(icon_url.trim())) {
                 icon_url = contentResult.getAppIconUrl().trim();
             }
+            // Ask the image CDN for the size we display, instead of resizing on the device.
+            icon_url = BranchImageUrlResolver.resolve(icon_url, size, size, true);
             Glide.with(context)
                     .load(icon_url)
                     .apply(new RequestOptions().override(size, size)
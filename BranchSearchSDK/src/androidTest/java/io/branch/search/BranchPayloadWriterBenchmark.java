@@ -0,0 +1,94 @@
+package io.branch.search;
+
+import android.os.Debug;
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the allocations of {@link BranchPayloadWriter} against the JSONObject
+ * serialization it replaced, on a device. Results are logged with the tag below.
+ *
+ * Run it with: ./gradlew :BranchSearchSDK:connectedAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class BranchPayloadWriterBenchmark {
+    private static final String TAG = "BranchPayloadBenchmark";
+    private static final int WARMUP = 100;
+    private static final int ITERATIONS = 1000;
+
+    private BranchPayload payload;
+
+    @Before
+    public void setUp() {
+        BranchConfiguration configuration = new BranchConfiguration().setBranchKey("key_live_test");
+        BranchDeviceInfo info = new BranchDeviceInfo();
+        BranchSearchRequest request = BranchSearchRequest.create("pizza near me")
+                .setMaxAppResults(5)
+                .setMaxContentPerAppResults(10);
+        payload = BranchSearchInterface.createPayload(request, configuration, info);
+    }
+
+    @Test
+    public void testWriterAllocatesLessThanJSONObject() throws Exception {
+        final JSONObject merged = merge(payload);
+        long jsonObject = measure("JSONObject.toString", new Task() {
+            @Override
+            public void run(@NonNull Buffer buffer) throws Exception {
+                buffer.write(merged.toString().getBytes("UTF-8"));
+            }
+        });
+        long writer = measure("BranchPayloadWriter", new Task() {
+            @Override
+            public void run(@NonNull Buffer buffer) throws Exception {
+                BranchPayloadWriter.write(payload, buffer);
+            }
+        });
+        assertTrue(writer < jsonObject);
+    }
+
+    private interface Task {
+        void run(@NonNull Buffer buffer) throws Exception;
+    }
+
+    /**
+     * @return the bytes allocated per run
+     */
+    @SuppressWarnings("deprecation")
+    private static long measure(@NonNull String name, @NonNull Task task) throws Exception {
+        Buffer buffer = new Buffer();
+        for (int i = 0; i < WARMUP; i++) {
+            task.run(buffer);
+            buffer.clear();
+        }
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run(buffer);
+            buffer.clear();
+        }
+        Debug.stopAllocCounting();
+        long count = Debug.getThreadAllocCount() / ITERATIONS;
+        long size = Debug.getThreadAllocSize() / ITERATIONS;
+        Log.i(TAG, name + ": " + count + " objects, " + size + " bytes per payload");
+        return size;
+    }
+
+    // What the payload used to be before it was written: all values in one JSONObject.
+    @NonNull
+    private static JSONObject merge(@NonNull BranchPayload payload) throws Exception {
+        Buffer buffer = new Buffer();
+        BranchPayloadWriter.write(payload, buffer);
+        return new JSONObject(buffer.readUtf8());
+    }
+}
@@ -7,10 +7,13 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -206,11 +209,21 @@ public class BranchAppResult implements Parcelable {
             }
         }
 
+        int maxResults = json.optInt(KEY_NOT_INSTALLED_MAX_RESULTS, Integer.MAX_VALUE);
+        return create(packageName, name, iconUrl, rankingHint, score, links, isInstalled, maxResults);
+    }
+
+    @Nullable
+    private static BranchAppResult create(String packageName, String name, String iconUrl,
+                                          @NonNull String rankingHint,
+                                          float score,
+                                          @NonNull List<BranchLinkResult> links,
+                                          boolean isInstalled,
+                                          int notInstalledMaxResults) {
         // Apply the max results constraint
         // If nothing remains, this app should disappear
         if (!isInstalled) {
-            int maxResults = json.optInt(KEY_NOT_INSTALLED_MAX_RESULTS, Integer.MAX_VALUE);
-            int max = Math.min(maxResults, links.size());
+            int max = Math.min(notInstalledMaxResults, links.size());
             links = links.subList(0, max);
         }
         if (links.isEmpty()) {
@@ -219,5 +232,104 @@ public class BranchAppResult implements Parcelable {
             return new BranchAppResult(packageName, name, iconUrl, rankingHint, score, links);
         }
     }
+
+    /**
+     * Reads an app result while the response is streamed. This makes no binder calls:
+     * links are checked against the installed apps and shortcuts by {@link Unfiltered#filter()},
+     * once the response is known to be successful.
+     * @param reader a reader positioned at the start of the app object
+     * @return the app, with all of its links
+     * @throws IOException if reading fails
+     */
+    @NonNull
+    static Unfiltered createFromJson(@NonNull JsonReader reader) throws IOException {
+        Unfiltered app = new Unfiltered();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals(KEY_APP_DEEP_LINKS) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                app.links.clear();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        app.links.add(BranchLinkResult.createFromJson(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+                continue;
+            }
+            Object value = Util.readJsonValue(reader);
+            switch (key) {
+                case KEY_APP_NAME:
+                    app.name = Util.asString(value);
+                    break;
+                case KEY_APP_STORE_ID:
+                    app.packageName = Util.asString(value);
+                    break;
+                case KEY_APP_ICON_URL:
+                    app.iconUrl = Util.asString(value);
+                    break;
+                case KEY_APP_SCORE:
+                    app.score = (float) Util.asDouble(value, 0.0);
+                    break;
+                case KEY_RANKING_HINT:
+                    app.rankingHint = Util.asString(value);
+                    break;
+                case KEY_DEEPVIEW_EXTRA_TEXT:
+                    app.deepviewExtraText = Util.asString(value);
+                    break;
+                case KEY_NOT_INSTALLED_MAX_RESULTS:
+                    app.notInstalledMaxResults = Util.asInt(value, Integer.MAX_VALUE);
+                    break;
+                case KEY_APP_DEEP_LINKS:
+                    // Not an array.
+                    app.links.clear();
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.endObject();
+        return app;
+    }
+
+    /**
+     * An app result read by {@link #createFromJson(JsonReader)}, whose links were not checked yet.
+     */
+    static final class Unfiltered {
+        private String name = "";
+        private String packageName = "";
+        private String iconUrl = "";
+        private String rankingHint = "";
+        private String deepviewExtraText = "";
+        private float score = 0;
+        private int notInstalledMaxResults = Integer.MAX_VALUE;
+        private final List<BranchLinkResult> links = new ArrayList<>();
+
+        private Unfiltered() {
+        }
+
+        /**
+         * Drops the links that can't be shown, like {@link #createFromJson(JSONObject)} does.
+         * This can make binder calls.
+         * @return the app result, or null if no link remains
+         */
+        @Nullable
+        BranchAppResult filter() {
+            Context appContext = BranchSearch.getInstance().getApplicationContext();
+            boolean isInstalled = Util.isAppInstalled(appContext, packageName);
+            List<BranchLinkResult> valid = new ArrayList<>();
+            for (BranchLinkResult link : links) {
+                link.setApp(name, packageName, iconUrl, deepviewExtraText);
+                if (link.isValid(isInstalled)) {
+                    valid.add(link);
+                }
+            }
+            return create(packageName, name, iconUrl, rankingHint, score, valid,
+                    isInstalled, notInstalledMaxResults);
+        }
+    }
 }
 
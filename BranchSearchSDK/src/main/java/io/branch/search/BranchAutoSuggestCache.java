@@ -0,0 +1,129 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cache of auto suggest results that can answer longer queries from the results of a prefix.
+ *
+ * The suggestions for "piz" usually contain those for "pizz" and "pizza" too, so when the query
+ * itself is not cached, we look for its longest cached prefix and keep the suggestions that
+ * still match. This is only an answer if it is as good as the server one: either it still has
+ * as many suggestions as requested, or the prefix entry was complete, that is shorter than the
+ * requested limit, so the server had nothing else to suggest. Otherwise the caller should go to
+ * the network. Entries older than the cache time to live are never used, and empty results are
+ * not cached, since the server might have suggestions for the next keystroke anyway.
+ *
+ * Entries live in a {@link BranchResultCache}, keyed by the request context followed by the
+ * normalized query, so the prefixes of a query are found by probing one key per prefix length.
+ * Queries are short, so this is as fast as walking a trie, without having to evict its nodes.
+ */
+class BranchAutoSuggestCache {
+
+    private final BranchResultCache<BranchAutoSuggestResult> cache;
+
+    BranchAutoSuggestCache(int maxEntries, long ttlMillis, long staleMillis) {
+        this.cache = new BranchResultCache<>(maxEntries, ttlMillis, staleMillis);
+    }
+
+    /**
+     * Returns cached suggestions for this request, either from the exact same query or
+     * from one of its prefixes.
+     * @param payload the request payload
+     * @return a result or null
+     */
+    @Nullable
+    BranchAutoSuggestResult get(@NonNull BranchPayload payload) {
+        String context = BranchRequestKey.createAutoSuggestCacheContext(
+                BranchSearchInterface.BRANCH_AUTOSUGGEST_URL, payload);
+        String query = BranchRequestKey.normalizeQuery(
+                payload.getValues().optString(BranchAutoSuggestRequest.KEY_USER_QUERY));
+        int maxResults = payload.getValues().optInt(BranchAutoSuggestRequest.KEY_MAX_RESULTS);
+
+        BranchAutoSuggestResult result = cache.peek(context + query);
+        if (result != null) {
+            cache.recordHit();
+            return BranchAutoSuggestResult.createFromCache(
+                    new ArrayList<>(result.getSuggestions()), false);
+        }
+        // Without a limit, we can't tell whether a prefix entry was complete.
+        for (int length = query.length() - 1; maxResults > 0 && length > 0; length--) {
+            result = cache.peek(context + query.substring(0, length));
+            if (result == null) continue;
+            // The longest cached prefix is the most accurate one. If that's not
+            // enough, shorter prefixes won't do better.
+            boolean complete = result.getSuggestions().size() < maxResults;
+            List<BranchAutoSuggestion> filtered = filter(result.getSuggestions(), query, maxResults);
+            if (filtered.size() >= maxResults || (complete && !filtered.isEmpty())) {
+                cache.recordHit();
+                return BranchAutoSuggestResult.createFromCache(filtered, false);
+            }
+            break;
+        }
+        cache.recordMiss();
+        return null;
+    }
+
+    /**
+     * Returns expired suggestions for this exact request, if they are still within the stale
+     * window. Prefixes are not used here: their filtered suggestions are only good enough
+     * while fresh.
+     * @param payload the request payload
+     * @return a stale result or null
+     */
+    @Nullable
+    BranchAutoSuggestResult getStale(@NonNull BranchPayload payload) {
+        String context = BranchRequestKey.createAutoSuggestCacheContext(
+                BranchSearchInterface.BRANCH_AUTOSUGGEST_URL, payload);
+        String query = BranchRequestKey.normalizeQuery(
+                payload.getValues().optString(BranchAutoSuggestRequest.KEY_USER_QUERY));
+        BranchAutoSuggestResult result = cache.getStale(context + query);
+        if (result == null) return null;
+        return BranchAutoSuggestResult.createFromCache(
+                new ArrayList<>(result.getSuggestions()), true);
+    }
+
+    void put(@NonNull BranchPayload payload, @NonNull BranchAutoSuggestResult result) {
+        if (result.getSuggestions().isEmpty()) return;
+        String context = BranchRequestKey.createAutoSuggestCacheContext(
+                BranchSearchInterface.BRANCH_AUTOSUGGEST_URL, payload);
+        String query = BranchRequestKey.normalizeQuery(
+                payload.getValues().optString(BranchAutoSuggestRequest.KEY_USER_QUERY));
+        cache.put(context + query, result);
+    }
+
+    long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Whether a suggestion matches a normalized query: the query must be a prefix
+     * of the suggestion or of one of its words.
+     * @param suggestion a suggestion
+     * @param query a normalized query
+     * @return true if it matches
+     */
+    private static boolean matches(@NonNull BranchAutoSuggestion suggestion, @NonNull String query) {
+        String text = BranchRequestKey.normalizeQuery(suggestion.getQuery());
+        return text.startsWith(query) || text.contains(" " + query);
+    }
+
+    @NonNull
+    private static List<BranchAutoSuggestion> filter(@NonNull List<BranchAutoSuggestion> suggestions,
+                                                     @NonNull String query,
+                                                     int maxResults) {
+        List<BranchAutoSuggestion> filtered = new ArrayList<>();
+        for (BranchAutoSuggestion suggestion : suggestions) {
+            if (filtered.size() >= maxResults) break;
+            if (matches(suggestion, query)) filtered.add(suggestion);
+        }
+        return filtered;
+    }
+}
@@ -19,9 +19,15 @@ public class BranchAutoSuggestResult implements Parcelable {
     private static final String KEY_RESULTS = "results";
 
     private final List<BranchAutoSuggestion> suggestions;
+    private final boolean fromCache;
+    private final boolean stale;
 
-    private BranchAutoSuggestResult(@NonNull List<BranchAutoSuggestion> suggestions) {
+    private BranchAutoSuggestResult(@NonNull List<BranchAutoSuggestion> suggestions,
+                                    boolean fromCache,
+                                    boolean stale) {
         this.suggestions = suggestions;
+        this.fromCache = fromCache;
+        this.stale = stale;
     }
 
     @NonNull
@@ -29,6 +35,45 @@ public class BranchAutoSuggestResult implements Parcelable {
         return suggestions;
     }
 
+    /**
+     * @return true if these suggestions were served from the SDK cache instead of the network.
+     * @see BranchConfiguration#setAutoSuggestCacheSize(int)
+     */
+    @SuppressWarnings("unused")
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * @return true if these suggestions came from the cache after their time to live.
+     * Fresh suggestions are requested in background and delivered again, only if they differ.
+     * @see BranchConfiguration#setStaleWhileRevalidate(long)
+     */
+    @SuppressWarnings("unused")
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @param other another result
+     * @return true if both results contain the same suggestions, in the same order
+     */
+    boolean hasSameContent(@NonNull BranchAutoSuggestResult other) {
+        if (suggestions.size() != other.suggestions.size()) return false;
+        for (int i = 0; i < suggestions.size(); i++) {
+            if (!suggestions.get(i).getQuery().equals(other.suggestions.get(i).getQuery())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    static BranchAutoSuggestResult createFromCache(@NonNull List<BranchAutoSuggestion> suggestions,
+                                                   boolean stale) {
+        return new BranchAutoSuggestResult(suggestions, true, stale);
+    }
+
     @NonNull
     static BranchAutoSuggestResult createFromJson(@NonNull JSONObject jsonObject) {
         List<BranchAutoSuggestion> suggestions = new ArrayList<>();
@@ -40,7 +85,7 @@ public class BranchAutoSuggestResult implements Parcelable {
                 }
             }
         } catch (JSONException ignore) { }
-        return new BranchAutoSuggestResult(suggestions);
+        return new BranchAutoSuggestResult(suggestions, false, false);
     }
 
     @Override
@@ -58,7 +103,7 @@ public class BranchAutoSuggestResult implements Parcelable {
         public BranchAutoSuggestResult createFromParcel(Parcel source) {
             List<BranchAutoSuggestion> suggestions = new ArrayList<>();
             source.readTypedList(suggestions, BranchAutoSuggestion.CREATOR);
-            return new BranchAutoSuggestResult(suggestions);
+            return new BranchAutoSuggestResult(suggestions, false, false);
         }
 
         @Override
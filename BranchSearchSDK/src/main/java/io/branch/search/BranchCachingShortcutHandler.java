@@ -0,0 +1,83 @@
+package io.branch.search;
+
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link IBranchShortcutHandler} that remembers the validation results of another handler,
+ * so that a shortcut is validated only once until its package or shortcuts change.
+ *
+ * Useful when a custom handler does expensive work in
+ * {@link IBranchShortcutHandler#validateShortcut(Context, String, String)}.
+ * The default handler already caches its results.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BranchCachingShortcutHandler implements IBranchShortcutHandler {
+    private final Object lock = new Object();
+    private final IBranchShortcutHandler handler;
+
+    // Guarded by lock
+    private final Map<String, Map<String, Boolean>> results = new HashMap<>();
+    private Boolean listening;
+    private long generation;
+
+    /**
+     * Creates a caching handler.
+     * @param handler the handler to be cached
+     */
+    public BranchCachingShortcutHandler(@NonNull IBranchShortcutHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public boolean validateShortcut(@NonNull Context context,
+                                    @NonNull String id,
+                                    @NonNull String packageName) {
+        long queryGeneration;
+        synchronized (lock) {
+            if (listening == null) {
+                listening = Build.VERSION.SDK_INT >= 25 && register(context);
+            }
+            Map<String, Boolean> ids = results.get(packageName);
+            Boolean valid = ids == null ? null : ids.get(id);
+            if (valid != null) return valid;
+            queryGeneration = generation;
+        }
+        boolean valid = handler.validateShortcut(context, id, packageName);
+        synchronized (lock) {
+            // Without callbacks, we would never know when to drop the result, so don't store it.
+            if (listening && queryGeneration == generation) {
+                Map<String, Boolean> ids = results.get(packageName);
+                if (ids == null) {
+                    ids = new HashMap<>();
+                    results.put(packageName, ids);
+                }
+                ids.put(id, valid);
+            }
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean launchShortcut(@NonNull Context context,
+                                  @NonNull String id,
+                                  @NonNull String packageName) {
+        return handler.launchShortcut(context, id, packageName);
+    }
+
+    private boolean register(@NonNull Context context) {
+        return new BranchShortcutCallback() {
+            @Override
+            void onInvalidate(@NonNull String packageName) {
+                synchronized (lock) {
+                    results.remove(packageName);
+                    generation++;
+                }
+            }
+        }.register(context.getApplicationContext());
+    }
+}
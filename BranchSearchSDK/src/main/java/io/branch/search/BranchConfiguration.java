@@ -1,13 +1,12 @@
 package io.branch.search;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -17,9 +16,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
 
 /**
  * Branch Configuration.  Use the Branch Configuration to override default Search options.
@@ -29,20 +32,47 @@ import java.util.Map;
 public class BranchConfiguration {
     final static String MANIFEST_KEY = "io.branch.sdk.BranchKey";
     private static final long SYNC_TIME_MILLIS = 1000 * 60 * 60; // 1 hour
+    private static final long DEFAULT_SEARCH_CACHE_TTL_MILLIS = 1000 * 60 * 5; // 5 minutes
+    private static final long DEFAULT_AUTOSUGGEST_CACHE_TTL_MILLIS = 1000 * 60 * 10; // 10 minutes
+
+    private static volatile String sManifestKey;
+    private static volatile boolean sManifestKeyFetched;
 
     private long lastSyncTimeMillis = 0L;
-    private final Object syncLock = new Object();
+    // Incremented when a value of addTemplateInfo() changes.
+    private final AtomicInteger templateVersion = new AtomicInteger();
 
+    // Request identity, sent with each request
     private String url = null;
     private String key = null;
     private String googleAdID = null;
     private boolean isLat = false;
     private Locale locale; // Overrides BranchDeviceInfo
     private String countryCode;
+    // Copy on write: never modified, but replaced. Readers don't need to lock.
+    private volatile Map<String, Object> requestExtra = Collections.emptyMap();
+
+    // Result handling
     private int intentFlags = Intent.FLAG_ACTIVITY_NEW_TASK;
-    private final Map<String, Object> requestExtra = new HashMap<>();
     private IBranchShortcutHandler shortcutHandler = IBranchShortcutHandler.DEFAULT;
 
+    // Networking
+    private OkHttpClient httpClient = null;
+    private boolean connectionWarmUpEnabled = false;
+    private boolean serviceEnabledPrefetchEnabled = false;
+    private final BranchRequestPolicy[] requestPolicies
+            = new BranchRequestPolicy[BranchSearch.Channel.values().length];
+
+    // Caching
+    private int searchCacheSize = 0;
+    private long searchCacheTtlMillis = DEFAULT_SEARCH_CACHE_TTL_MILLIS;
+    private int autoSuggestCacheSize = 0;
+    private long autoSuggestCacheTtlMillis = DEFAULT_AUTOSUGGEST_CACHE_TTL_MILLIS;
+    private long staleWhileRevalidateMillis = 0;
+    private boolean offlineFallbackEnabled = false;
+    private long queryHintCacheMaxAgeMillis = 0;
+    private int deepViewPrefetchCount = 0;
+
     // JSONKeys associated with a Configuration
     enum JSONKey {
         BranchKey("branch_key"),
@@ -72,7 +102,38 @@ public class BranchConfiguration {
     }
 
     /**
-     * Update this object to default values, fetching them if necessary.
+     * Creates a copy of the given configuration.
+     * @param other a configuration
+     */
+    BranchConfiguration(@NonNull BranchConfiguration other) {
+        lastSyncTimeMillis = other.lastSyncTimeMillis;
+        url = other.url;
+        key = other.key;
+        googleAdID = other.googleAdID;
+        isLat = other.isLat;
+        locale = other.locale;
+        countryCode = other.countryCode;
+        requestExtra = other.requestExtra;
+        intentFlags = other.intentFlags;
+        shortcutHandler = other.shortcutHandler;
+        httpClient = other.httpClient;
+        connectionWarmUpEnabled = other.connectionWarmUpEnabled;
+        serviceEnabledPrefetchEnabled = other.serviceEnabledPrefetchEnabled;
+        System.arraycopy(other.requestPolicies, 0, requestPolicies, 0, requestPolicies.length);
+        searchCacheSize = other.searchCacheSize;
+        searchCacheTtlMillis = other.searchCacheTtlMillis;
+        autoSuggestCacheSize = other.autoSuggestCacheSize;
+        autoSuggestCacheTtlMillis = other.autoSuggestCacheTtlMillis;
+        staleWhileRevalidateMillis = other.staleWhileRevalidateMillis;
+        offlineFallbackEnabled = other.offlineFallbackEnabled;
+        queryHintCacheMaxAgeMillis = other.queryHintCacheMaxAgeMillis;
+        deepViewPrefetchCount = other.deepViewPrefetchCount;
+    }
+
+    /**
+     * Update this object to default values, fetching them if necessary. This is cheap after
+     * the first call, since the manifest key and the country code are cached. The GAID and
+     * limit ad tracking flag are not fetched here: see {@link #fetchAdTracking(Context)}.
      * @param context a context
      */
     void sync(@NonNull Context context) {
@@ -90,12 +151,6 @@ public class BranchConfiguration {
         if (!hasValidUrl()) {
             setUrl(BranchSearchInterface.BRANCH_SEARCH_URL);
         }
-
-        // Refetch GAID even if we have a valid one. It might have changed
-        // and it's not an expensive call anyway because of our SYNC_TIME_MILLIS.
-        fetchGAID();
-
-        lastSyncTimeMillis = System.currentTimeMillis();
     }
 
     /**
@@ -145,6 +200,7 @@ public class BranchConfiguration {
     @NonNull
     public BranchConfiguration setBranchKey(@Nullable String key) {
         this.key = key;
+        templateVersion.incrementAndGet();
         return this;
     }
 
@@ -167,11 +223,25 @@ public class BranchConfiguration {
     }
 
     /**
-     * Enables or disables ad tracking limiting.
-     * @param limit true to limit
+     * Sets the GAID and the limit ad tracking flag, which always go together.
+     * Only call this on a configuration that is not in use yet.
+     * @param id Google Ad ID
+     * @param limit true if ad tracking is limited
      */
-    void limitAdTracking(boolean limit) {
+    void setAdTracking(@Nullable String id, boolean limit) {
+        googleAdID = id;
         isLat = limit;
+        templateVersion.incrementAndGet();
+    }
+
+    /**
+     * Takes the GAID, the limit ad tracking flag and their sync time from the given
+     * configuration. Only call this on a configuration that is not in use yet.
+     * @param other a configuration
+     */
+    void copyAdTracking(@NonNull BranchConfiguration other) {
+        setAdTracking(other.googleAdID, other.isLat);
+        lastSyncTimeMillis = other.lastSyncTimeMillis;
     }
 
     /**
@@ -191,18 +261,6 @@ public class BranchConfiguration {
         return this.key;
     }
 
-    /**
-     * Set the Configuration Google Ad ID
-     * @param id Google Ad ID
-     * @return this BranchConfiguration
-     */
-    @SuppressWarnings("UnusedReturnValue")
-    @NonNull
-    BranchConfiguration setGoogleAdID(@Nullable String id) {
-        this.googleAdID = id;
-        return this;
-    }
-
     /**
      * @return the Google Ad Id.
      */
@@ -221,6 +279,7 @@ public class BranchConfiguration {
     @NonNull
     BranchConfiguration setLocale(@Nullable Locale locale) {
         this.locale = locale;
+        templateVersion.incrementAndGet();
         return this;
     }
 
@@ -233,6 +292,7 @@ public class BranchConfiguration {
     @NonNull
     BranchConfiguration setCountryCode(@Nullable String cc) {
         this.countryCode = cc;
+        templateVersion.incrementAndGet();
         return this;
     }
 
@@ -245,50 +305,53 @@ public class BranchConfiguration {
      * @param context Context
      */
     private void fetchBranchKey(@NonNull Context context) {
-        String key = null;
-        try {
-            final ApplicationInfo ai = context.getPackageManager()
-                    .getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
-            if (ai.metaData != null) {
-                key = ai.metaData.getString(MANIFEST_KEY);
+        // The manifest does not change at runtime, so the package manager is asked only once.
+        if (!sManifestKeyFetched) {
+            String key = null;
+            try {
+                final ApplicationInfo ai = context.getPackageManager()
+                        .getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+                if (ai.metaData != null) {
+                    key = ai.metaData.getString(MANIFEST_KEY);
+                }
+            } catch (final Exception ignore) {
             }
-        } catch (final Exception ignore) {
+            sManifestKey = key;
+            sManifestKeyFetched = true;
         }
-        setBranchKey(key);
+        setBranchKey(sManifestKey);
     }
 
     /**
-     * Retrieves the Google Ad ID from the play-services library.
+     * Returns a copy of this configuration with the GAID and the limit ad tracking flag fetched
+     * again from the play-services library. The copy is complete before anyone can see it, so
+     * requests never read a GAID and a flag from different fetches. If the fetch fails, the
+     * current values are kept. This blocks, so it must be called in background.
      * Note that this is the only place where the dependency for play-services-ads is needed.
+     * @param context a context
+     * @return a copy of this configuration
      */
-    @SuppressLint("StaticFieldLeak")
-    private void fetchGAID() {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-                try {
-                    BranchSearch search = BranchSearch.getInstance();
-                    if (search == null) {
-                        return null;
-                    }
-                    Context context = search.getApplicationContext();
-                    BranchConfiguration config = search.getBranchConfiguration();
-                    AdvertisingIdClient.Info adInfo = AdvertisingIdClient.getAdvertisingIdInfo(context);
-                    config.setGoogleAdID(adInfo != null ? adInfo.getId() : null);
-                    config.limitAdTracking(adInfo != null && adInfo.isLimitAdTrackingEnabled());
-                } catch (Exception e) {
-                    Log.i("BranchConfiguration", "Got exception: "
-                            + e.getClass().getName() + " with message: "
-                            + e.getMessage());
-                } catch (NoClassDefFoundError e) {
-                    // This is thrown if no gms base library is on our classpath, ignore it.
-                    // NOTE: This should never happen unless the library is explicitly removed from
-                    // our dependency or in case of bad AAR implementation.
-                    Log.i("BranchConfiguration", "Could not find the play-services lib.");
-                }
-                return null;
-            }
-        }.execute();
+    @WorkerThread
+    @NonNull
+    BranchConfiguration fetchAdTracking(@NonNull Context context) {
+        BranchConfiguration copy = new BranchConfiguration(this);
+        try {
+            AdvertisingIdClient.Info adInfo = AdvertisingIdClient.getAdvertisingIdInfo(context);
+            copy.setAdTracking(adInfo != null ? adInfo.getId() : null,
+                    adInfo != null && adInfo.isLimitAdTrackingEnabled());
+        } catch (Exception e) {
+            Log.i("BranchConfiguration", "Got exception: "
+                    + e.getClass().getName() + " with message: "
+                    + e.getMessage());
+        } catch (NoClassDefFoundError e) {
+            // This is thrown if no gms base library is on our classpath, ignore it.
+            // NOTE: This should never happen unless the library is explicitly removed from
+            // our dependency or in case of bad AAR implementation.
+            Log.i("BranchConfiguration", "Could not find the play-services lib.");
+        }
+        // Even if it failed, don't try again on each request.
+        copy.lastSyncTimeMillis = System.currentTimeMillis();
+        return copy;
     }
 
     /**
@@ -300,12 +363,15 @@ public class BranchConfiguration {
      * @param data value
      */
     @SuppressWarnings("WeakerAccess")
-    public void addRequestExtra(@NonNull String key, @NonNull Object data) {
-        requestExtra.put(key, data);
+    public synchronized void addRequestExtra(@NonNull String key, @NonNull Object data) {
+        Map<String, Object> extras = new HashMap<>(requestExtra);
+        extras.put(key, data);
+        requestExtra = Collections.unmodifiableMap(extras);
     }
 
     /**
      * Override the default shortcut handler to validate and launch Shortcut results.
+     * Wrap it in a {@link BranchCachingShortcutHandler} if validation is expensive.
      * @param shortcutHandler handler to use
      * @return this BranchConfiguration
      */
@@ -328,25 +394,289 @@ public class BranchConfiguration {
     }
 
     /**
-     * Add Configuration Information to a JSON object.
+     * Sets the OkHttp client that the SDK should use for all its network requests, including
+     * deep view images. Passing the client that the app already uses lets the SDK share its
+     * connection pool and dispatcher, so their limits are tuned in a single place.
+     * The SDK will derive its own instances through {@link OkHttpClient#newBuilder()}.
+     *
+     * If not set, the SDK uses a shared client of its own.
+     * @param client a client, or null to use the default
+     * @return this BranchConfiguration
      */
-    void addConfigurationInfo(@NonNull JSONObject jsonObject) {
-        // Anytime we're being used, see if we should re-sync.
-        // Synchronize just in case someone fires requests from different threads at once.
-        synchronized (syncLock) {
-            long now = System.currentTimeMillis();
-            if (now > lastSyncTimeMillis + SYNC_TIME_MILLIS) {
-                BranchSearch search = BranchSearch.getInstance();
-                if (search != null) {
-                    sync(search.getApplicationContext());
-                } else {
-                    // Object being used but BranchSearch not initialized.
-                    // This can happen in tests. Ignore.
-                }
-            }
-        }
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setHttpClient(@Nullable OkHttpClient client) {
+        this.httpClient = client;
+        return this;
+    }
+
+    @Nullable
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Enables or disables connection warm up. When enabled, the SDK opens connections to the
+     * Branch servers in background during {@link BranchSearch#init(Context, BranchConfiguration)},
+     * so that the first request does not have to wait for DNS resolution and TLS handshakes.
+     * Whether the first request benefited from this can be checked through
+     * {@link BranchSearchMetrics#getWarmUpResult()}.
+     *
+     * Disabled by default.
+     * @param enabled true to enable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setConnectionWarmUpEnabled(boolean enabled) {
+        this.connectionWarmUpEnabled = enabled;
+        return this;
+    }
+
+    boolean isConnectionWarmUpEnabled() {
+        return connectionWarmUpEnabled;
+    }
 
-        // Write.
+    /**
+     * Enables or disables checking the service status during
+     * {@link BranchSearch#init(Context, BranchConfiguration)}. When enabled, the status is
+     * already cached when a search fails with {@link BranchSearchError.ERR_CODE#UNAUTHORIZED_ERR},
+     * so that {@link BranchSearchError.ERR_CODE#SERVICE_DISABLED_ERR} can be reported without
+     * an extra request. This costs one request per init.
+     *
+     * Disabled by default.
+     * @param enabled true to enable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setServiceEnabledPrefetchEnabled(boolean enabled) {
+        this.serviceEnabledPrefetchEnabled = enabled;
+        return this;
+    }
+
+    boolean isServiceEnabledPrefetchEnabled() {
+        return serviceEnabledPrefetchEnabled;
+    }
+
+    /**
+     * Enables an in-memory cache of search results. When a search is repeated, for example
+     * because the user deleted and typed again the same characters, the results are served
+     * from the cache without a network request. Such results return true from
+     * {@link BranchSearchResult#isFromCache()}.
+     *
+     * Queries are compared after trimming and lower casing, and locations are rounded
+     * to about 1km.
+     *
+     * Disabled by default.
+     * @param maxEntries the maximum number of cached results, or 0 to disable the cache
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setSearchCacheSize(int maxEntries) {
+        this.searchCacheSize = Math.max(0, maxEntries);
+        return this;
+    }
+
+    int getSearchCacheSize() {
+        return searchCacheSize;
+    }
+
+    /**
+     * Sets how long search results stay in the cache enabled by {@link #setSearchCacheSize(int)}.
+     *
+     * Defaults to 5 minutes.
+     * @param ttlMillis the time to live, in milliseconds
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setSearchCacheTtl(long ttlMillis) {
+        this.searchCacheTtlMillis = Math.max(0, ttlMillis);
+        return this;
+    }
+
+    long getSearchCacheTtl() {
+        return searchCacheTtlMillis;
+    }
+
+    /**
+     * Enables an in-memory cache of auto suggest results. Besides repeated queries, the cache
+     * can answer a longer query from the results of its prefix: for example, the suggestions
+     * for "pizz" are found among those for "piz". The network is only used when the cached
+     * suggestions are too few or too old. Such results return true from
+     * {@link BranchAutoSuggestResult#isFromCache()}.
+     *
+     * Disabled by default.
+     * @param maxEntries the maximum number of cached results, or 0 to disable the cache
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setAutoSuggestCacheSize(int maxEntries) {
+        this.autoSuggestCacheSize = Math.max(0, maxEntries);
+        return this;
+    }
+
+    int getAutoSuggestCacheSize() {
+        return autoSuggestCacheSize;
+    }
+
+    /**
+     * Sets how long auto suggest results stay in the cache enabled by
+     * {@link #setAutoSuggestCacheSize(int)}.
+     *
+     * Defaults to 10 minutes.
+     * @param ttlMillis the time to live, in milliseconds
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setAutoSuggestCacheTtl(long ttlMillis) {
+        this.autoSuggestCacheTtlMillis = Math.max(0, ttlMillis);
+        return this;
+    }
+
+    long getAutoSuggestCacheTtl() {
+        return autoSuggestCacheTtlMillis;
+    }
+
+    /**
+     * Enables persisting query hints to app-private storage. The last hints received from
+     * the server are then available synchronously through {@link BranchSearch#getCachedQueryHints()},
+     * for example to show them in the first frame of a search screen while
+     * {@link BranchSearch#queryHint(BranchQueryHintRequest, IBranchQueryHintEvents)} refreshes them.
+     * The SDK never requests hints on its own: they are only stored when the app asks for them.
+     *
+     * Disabled by default.
+     * @param maxAgeMillis how long stored hints can be used, in milliseconds, or 0 to disable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setQueryHintCacheMaxAge(long maxAgeMillis) {
+        this.queryHintCacheMaxAgeMillis = Math.max(0, maxAgeMillis);
+        return this;
+    }
+
+    long getQueryHintCacheMaxAge() {
+        return queryHintCacheMaxAgeMillis;
+    }
+
+    /**
+     * Enables the stale while revalidate mode for the SDK caches.
+     *
+     * When a cached search or auto suggest result has expired, but not by more than the given
+     * time, it is delivered immediately with {@code isStale()} returning true. A new request is
+     * then sent in background, and its result is delivered to the same callback only if it
+     * differs from the stale one. Errors of the background request are not delivered.
+     * Query hints stored through {@link #setQueryHintCacheMaxAge(long)} are served the same way.
+     *
+     * This only has an effect on the caches that are enabled. Disabled by default.
+     * @param maxStaleMillis how long results can be served after their time to live, in
+     *                       milliseconds, or 0 to disable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setStaleWhileRevalidate(long maxStaleMillis) {
+        this.staleWhileRevalidateMillis = Math.max(0, maxStaleMillis);
+        return this;
+    }
+
+    long getStaleWhileRevalidate() {
+        return staleWhileRevalidateMillis;
+    }
+
+    /**
+     * Enables the offline fallback of the search cache. When a search fails because there is
+     * no connectivity or the request timed out, the SDK delivers the best cached result instead
+     * of the error: the result for the same query if any, otherwise the result for its longest
+     * cached prefix, as long as that is at least 3 characters and half of the query. Cached
+     * results are used no matter how old they are, and return true from both
+     * {@link BranchSearchResult#isFromCache()} and {@link BranchSearchResult#isStale()}.
+     *
+     * This requires the search cache, see {@link #setSearchCacheSize(int)}. Disabled by default.
+     * @param enabled true to enable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setOfflineFallbackEnabled(boolean enabled) {
+        this.offlineFallbackEnabled = enabled;
+        return this;
+    }
+
+    boolean isOfflineFallbackEnabled() {
+        return offlineFallbackEnabled;
+    }
+
+    /**
+     * Prefetches the deep view images of the first links of each search result, so that
+     * {@link BranchLinkResult#openDeepView(android.support.v4.app.FragmentManager)} shows them
+     * without waiting for the network. Images are downloaded one at a time into a disk cache,
+     * and the prefetch is canceled when a new search starts.
+     *
+     * Disabled by default.
+     * @param count the number of links to prefetch, or 0 to disable
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setDeepViewPrefetchCount(int count) {
+        this.deepViewPrefetchCount = Math.max(0, count);
+        return this;
+    }
+
+    int getDeepViewPrefetchCount() {
+        return deepViewPrefetchCount;
+    }
+
+    /**
+     * Sets the policy that controls when requests of the given channel are sent.
+     * For example, {@link BranchRequestPolicy#debounce(long)} on the
+     * {@link BranchSearch.Channel#AUTOSUGGEST} channel avoids sending a request for every
+     * keystroke of a fast typist.
+     *
+     * Defaults to {@link BranchRequestPolicy#immediate()} for all channels.
+     * @param channel the channel
+     * @param policy the policy
+     * @return this BranchConfiguration
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    @NonNull
+    public BranchConfiguration setRequestPolicy(@NonNull BranchSearch.Channel channel,
+                                                @NonNull BranchRequestPolicy policy) {
+        this.requestPolicies[channel.ordinal()] = policy;
+        return this;
+    }
+
+    @NonNull
+    BranchRequestPolicy getRequestPolicy(@NonNull BranchSearch.Channel channel) {
+        BranchRequestPolicy policy = requestPolicies[channel.ordinal()];
+        return policy == null ? BranchRequestPolicy.immediate() : policy;
+    }
+
+    /**
+     * @return a number that changes when the values of {@link #addTemplateInfo(JSONObject)} change
+     */
+    int getTemplateVersion() {
+        return templateVersion.get();
+    }
+
+    /**
+     * @return true if the GAID and limit ad tracking flag were fetched too long ago
+     */
+    boolean needsSync() {
+        return System.currentTimeMillis() > lastSyncTimeMillis + SYNC_TIME_MILLIS;
+    }
+
+    /**
+     * Add the Configuration Information that only changes on sync or through setters
+     * to a JSON object.
+     */
+    void addTemplateInfo(@NonNull JSONObject jsonObject) {
         try {
             jsonObject.putOpt(JSONKey.BranchKey.toString(), getBranchKey());
             jsonObject.putOpt(JSONKey.Country.toString(), countryCode);
@@ -357,18 +687,26 @@ public class BranchConfiguration {
             // Pass the GAID and the LAT flag.
             jsonObject.putOpt(JSONKey.GAID.toString(), getGoogleAdID());
             jsonObject.putOpt(JSONKey.LAT.toString(), (isAdTrackingLimited() ? 1 : 0));
+        } catch (JSONException ignore) {
+        }
+    }
 
+    /**
+     * Add the configuration-level request extras to a JSON object.
+     */
+    void addRequestExtraInfo(@NonNull JSONObject jsonObject) {
+        try {
             // Add extra request data.
             // The JSONObject for this key might already exist because the key is shared
             // between this class and BranchDiscoveryRequest.
-            if (!requestExtra.keySet().isEmpty()) {
+            Map<String, Object> extras = requestExtra;
+            if (!extras.isEmpty()) {
                 JSONObject extraData = jsonObject.optJSONObject(JSONKey.RequestExtra.toString());
                 if (extraData == null) extraData = new JSONObject();
 
-                for (String key : requestExtra.keySet()) {
-                    Object value = requestExtra.get(key);
-                    if (!extraData.has(key)) {
-                        extraData.putOpt(key, value);
+                for (Map.Entry<String, Object> extra : extras.entrySet()) {
+                    if (!extraData.has(extra.getKey())) {
+                        extraData.putOpt(extra.getKey(), extra.getValue());
                     }
                 }
                 jsonObject.putOpt(JSONKey.RequestExtra.toString(), extraData);
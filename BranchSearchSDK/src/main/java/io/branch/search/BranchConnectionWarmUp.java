@@ -0,0 +1,97 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to the Branch hosts ahead of time, so that the first request after
+ * {@link BranchSearch#init(android.content.Context, BranchConfiguration)} does not pay for
+ * DNS, TCP and TLS. The connections are then kept alive in the shared connection pool.
+ *
+ * Enabled through {@link BranchConfiguration#setConnectionWarmUpEnabled(boolean)}.
+ */
+class BranchConnectionWarmUp {
+
+    // Set as the tag of warm up requests, so we can tell them apart.
+    private static final Object WARM_UP_TAG = new Object();
+
+    private static final Set<String> sHosts = new HashSet<>();
+    private static volatile BranchSearchMetrics.WarmUpResult sResult
+            = BranchSearchMetrics.WarmUpResult.DISABLED;
+
+    private BranchConnectionWarmUp() {}
+
+    /**
+     * Starts a lightweight HEAD request to each of the given hosts, in background.
+     * Each host is warmed up at most once per process.
+     * @param client the client whose connection pool should be warmed up
+     * @param urls urls of the hosts to warm up
+     */
+    static void start(@NonNull OkHttpClient client, @NonNull Collection<String> urls) {
+        for (String url : urls) {
+            HttpUrl httpUrl = url == null ? null : HttpUrl.parse(url);
+            if (httpUrl == null) continue;
+            synchronized (sHosts) {
+                if (!sHosts.add(httpUrl.host())) continue;
+                sResult = BranchSearchMetrics.WarmUpResult.PENDING;
+            }
+            HttpUrl root = new HttpUrl.Builder()
+                    .scheme(httpUrl.scheme())
+                    .host(httpUrl.host())
+                    .port(httpUrl.port())
+                    .build();
+            Request request = new Request.Builder()
+                    .url(root)
+                    .head()
+                    .tag(WARM_UP_TAG)
+                    .build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    // Nothing to do. The first request will open its own connection.
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    // We don't care about the response, only about the connection.
+                    response.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called by {@link BranchEventListener} when a call that acquired a connection is over.
+     * The first regular request to one of the warmed up hosts decides the result.
+     * @param request the request
+     * @param reusedConnection true if the call did not have to open a new connection
+     */
+    static void onCallFinished(@NonNull Request request, boolean reusedConnection) {
+        if (sResult != BranchSearchMetrics.WarmUpResult.PENDING) return;
+        if (request.tag() == WARM_UP_TAG) return;
+        synchronized (sHosts) {
+            if (sResult == BranchSearchMetrics.WarmUpResult.PENDING
+                    && sHosts.contains(request.url().host())) {
+                sResult = reusedConnection
+                        ? BranchSearchMetrics.WarmUpResult.REUSED
+                        : BranchSearchMetrics.WarmUpResult.NOT_REUSED;
+            }
+        }
+    }
+
+    @NonNull
+    static BranchSearchMetrics.WarmUpResult getResult() {
+        return sResult;
+    }
+}
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -30,6 +29,7 @@ import android.support.v4.widget.CircularProgressDrawable;
 import android.text.TextUtils;
 import android.text.method.ScrollingMovementMethod;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.ContextThemeWrapper;
@@ -42,15 +42,10 @@ import android.widget.ImageView;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 /**
  * A dialog that can render deepviews.
@@ -61,11 +56,10 @@ public class BranchDeepViewFragment {
     public static final String TAG = "BranchDeepViewFragment";
 
     private static final String KEY_LINK = "link";
-    private static final OkHttpClient CLIENT = new OkHttpClient.Builder().build();
 
     private static final String PLAY_STORE_APP_URL_PREFIX
             = "https://play.google.com/store/apps/details?id=";
-    private static final String APP_ICON_URL_SMALL_SUFFIX = "=s90";
+    private static final float IMAGE_HEIGHT_FRACTION = 0.2F;
 
     @NonNull
     static DialogFragment getInstance(@NonNull BranchLinkResult link) {
@@ -195,15 +189,7 @@ public class BranchDeepViewFragment {
         // Image
         ImageView image = root.findViewById(R.id.branch_deepview_image);
         if (image != null) {
-            String url = link.getImageUrl();
-            if (url != null
-                    && url.equals(link.getAppIconUrl())
-                    && url.endsWith(APP_ICON_URL_SMALL_SUFFIX)) {
-                // Remove the =s90 at the end of our app icon urls. This makes them 90x90
-                // which is not suitable for fullscreen images.
-                url = url.substring(0, url.length() - APP_ICON_URL_SMALL_SUFFIX.length());
-            }
-            loadImage(image, url, R.dimen.branch_deepview_image_corners);
+            loadImage(image, link.getImageUrl(), R.dimen.branch_deepview_image_corners);
         }
 
         // Button
@@ -234,6 +220,49 @@ public class BranchDeepViewFragment {
         }
     }
 
+    /**
+     * Downloads the images of the deep views of the first links in this result,
+     * so that they open without waiting for the network.
+     * @param context a context
+     * @param result a search result
+     * @param maxLinks the number of links to prefetch
+     */
+    static void prefetchImages(@NonNull Context context,
+                               @NonNull BranchSearchResult result,
+                               int maxLinks) {
+        // These are the sizes that loadImage() will use, since views are not measured yet.
+        Resources resources = context.getResources();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        int iconSize = resources.getDimensionPixelSize(R.dimen.branch_deepview_app_icon_size);
+        int imageHeight = (int) (IMAGE_HEIGHT_FRACTION * metrics.heightPixels);
+        List<String> urls = new ArrayList<>();
+        int links = 0;
+        for (BranchAppResult app : result.getResults()) {
+            for (BranchLinkResult link : app.getDeepLinks()) {
+                if (++links > maxLinks) break;
+                String iconUrl = link.getAppIconUrl();
+                String imageUrl = link.getImageUrl();
+                if (iconUrl != null) {
+                    iconUrl = BranchImageUrlResolver.resolve(iconUrl, iconSize, iconSize);
+                    if (!urls.contains(iconUrl)) urls.add(iconUrl);
+                }
+                if (imageUrl != null) {
+                    imageUrl = BranchImageUrlResolver.resolve(imageUrl, metrics.widthPixels, imageHeight);
+                    if (!urls.contains(imageUrl)) urls.add(imageUrl);
+                }
+            }
+        }
+        BranchImageLoader.getInstance(context).prefetch(urls);
+    }
+
+    /**
+     * Cancels the downloads started by {@link #prefetchImages(Context, BranchSearchResult, int)}.
+     * @param context a context
+     */
+    static void cancelPrefetch(@NonNull Context context) {
+        BranchImageLoader.getInstance(context).cancelPrefetch();
+    }
+
     private static void loadText(@NonNull TextView textView, @Nullable String text) {
         if (TextUtils.isEmpty(text)) {
             textView.setVisibility(View.GONE);
@@ -247,6 +276,20 @@ public class BranchDeepViewFragment {
                                   @DimenRes final int cornersRes) {
         Context context = imageView.getContext();
         final Resources resources = context.getResources();
+        if (url == null || HttpUrl.parse(url) == null) {
+            imageView.setVisibility(View.GONE);
+            return;
+        }
+        BranchImageLoader loader = BranchImageLoader.getInstance(context);
+        int[] size = getTargetSize(imageView);
+        // Ask the CDN for the size that we need. This also removes the =s90 at the end
+        // of our app icon urls, which are sometimes used as the deep view image.
+        url = BranchImageUrlResolver.resolve(url, size[0], size[1]);
+        Bitmap cached = loader.getCached(url, size[0], size[1]);
+        if (cached != null) {
+            setImage(imageView, cached, cornersRes);
+            return;
+        }
         CircularProgressDrawable progress = new CircularProgressDrawable(context);
         progress.setArrowEnabled(false);
         progress.setCenterRadius(resources.getDimension(R.dimen.branch_deepview_loading_radius));
@@ -254,60 +297,49 @@ public class BranchDeepViewFragment {
         progress.setColorSchemeColors(ContextCompat.getColor(context, R.color.branch_deepview_loading));
         progress.start();
         imageView.setImageDrawable(progress);
-        HttpUrl httpUrl = url == null ? null : HttpUrl.parse(url);
-        if (httpUrl == null) {
-            imageView.setVisibility(View.GONE);
-        } else {
-            Request request = new Request.Builder().url(httpUrl).build();
-            CLIENT.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    imageView.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            imageView.setVisibility(View.GONE);
-                        }
-                    });
+        loader.load(url, size[0], size[1], new BranchImageLoader.Callback() {
+            @Override
+            public void onImageLoaded(@Nullable Bitmap bitmap) {
+                if (bitmap == null) {
+                    imageView.setVisibility(View.GONE);
+                } else {
+                    setImage(imageView, bitmap, cornersRes);
                 }
+            }
+        });
+    }
 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    InputStream stream = null;
-                    try {
-                        // Body is not null as per docs
-                        //noinspection ConstantConditions
-                        stream = response.body().byteStream();
-                        final Bitmap bitmap = BitmapFactory.decodeStream(stream);
-                        if (bitmap == null) { // Go to the 'catch' block.
-                            throw new NullPointerException();
-                        }
-                        imageView.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                if (cornersRes != 0) {
-                                    float corners = resources.getDimension(cornersRes);
-                                    imageView.setImageDrawable(
-                                            new RoundedCornersDrawable(bitmap, corners));
-                                } else {
-                                    imageView.setImageBitmap(bitmap);
-                                }
-                            }
-                        });
-                    } catch (Exception e) {
-                        imageView.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                imageView.setVisibility(View.GONE);
-                            }
-                        });
-                    } finally {
-                        if (stream != null) {
-                            stream.close();
-                        }
-                        response.close();
-                    }
-                }
-            });
+    /**
+     * Returns the size that the image view will have, from its layout params and the display
+     * size. The measured size is not used, even if available: it would change the image url
+     * and the cache keys, so the image would not match the one of
+     * {@link #prefetchImages(Context, BranchSearchResult, int)} and would be decoded again.
+     */
+    @NonNull
+    private static int[] getTargetSize(@NonNull ImageView imageView) {
+        int width = 0;
+        int height = 0;
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params != null && params.width > 0) width = params.width;
+        if (params != null && params.height > 0) height = params.height;
+        DisplayMetrics metrics = imageView.getResources().getDisplayMetrics();
+        if (width <= 0) width = metrics.widthPixels;
+        if (height <= 0) {
+            height = imageView instanceof PercentImageView
+                    ? (int) (IMAGE_HEIGHT_FRACTION * metrics.heightPixels)
+                    : metrics.heightPixels;
+        }
+        return new int[]{width, height};
+    }
+
+    private static void setImage(@NonNull ImageView imageView,
+                                 @NonNull Bitmap bitmap,
+                                 @DimenRes int cornersRes) {
+        if (cornersRes != 0) {
+            float corners = imageView.getResources().getDimension(cornersRes);
+            imageView.setImageDrawable(new RoundedCornersDrawable(bitmap, corners));
+        } else {
+            imageView.setImageBitmap(bitmap);
         }
     }
 
@@ -395,7 +427,7 @@ public class BranchDeepViewFragment {
 
         @Override
         protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-            int spec = getPercentMeasureSpec(getResources(), heightMeasureSpec, 0.2F);
+            int spec = getPercentMeasureSpec(getResources(), heightMeasureSpec, IMAGE_HEIGHT_FRACTION);
             super.onMeasure(widthMeasureSpec, spec);
         }
     }
@@ -7,6 +7,7 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
@@ -22,24 +23,24 @@ import java.util.Locale;
  * Branch DeviceInfo.
  *
  * Just like {@link BranchConfiguration}, this class must be synced before using through
- * {@link #sync(Context)}. The class will also sync automatically anytime it's used in
- * {@link #addDeviceInfo(JSONObject)}, with a 1-hour interval between checks.
+ * {@link #sync(Context)}. The class will also sync automatically in background when
+ * the {@link BranchPayloadTemplate} is used, with a 1-hour interval between checks.
  * This ensures that information here is always up to date.
+ *
+ * Values that only change on sync are kept in an immutable {@link Snapshot}, which each sync
+ * replaces when something changed. The {@link BranchPayloadTemplate} is built from it, so
+ * requests never read values that a sync is writing.
  */
 class BranchDeviceInfo {
     @VisibleForTesting static final String UNKNOWN_CARRIER = "bnc_no_value";
     @VisibleForTesting static final String DEFAULT_LOCALE = "en-US";
     private static final long SYNC_TIME_MILLIS = 1000 * 60 * 60; // 1 hour
 
-    private String carrierName = UNKNOWN_CARRIER;
-    private DisplayMetrics displayMetrics = null;
-    private String locale = DEFAULT_LOCALE;
-    private String appPackage = null;
-    private String appVersion = null;
+    private volatile Snapshot snapshot = new Snapshot(UNKNOWN_CARRIER, null, DEFAULT_LOCALE, null, null);
     double latitude = 0.0;
     double longitude = 0.0;
 
-    private long lastSyncTimeMillis = 0L;
+    private volatile long lastSyncTimeMillis = 0L;
     private final Object syncLock = new Object();
 
     enum JSONKey {
@@ -85,6 +86,7 @@ class BranchDeviceInfo {
      */
     void sync(@NonNull Context context) {
         // Check for carrier name.
+        String carrierName = null;
         try {
             TelephonyManager manager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
             carrierName = manager.getNetworkOperatorName();
@@ -97,11 +99,10 @@ class BranchDeviceInfo {
         // Apparently the display can be null in some cases.
         WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display;
+        DisplayMetrics displayMetrics = null;
         if (windowManager != null && (display = windowManager.getDefaultDisplay()) != null) {
             displayMetrics = new DisplayMetrics();
             display.getMetrics(displayMetrics);
-        } else {
-            displayMetrics = null;
         }
 
         // Check for locale.
@@ -111,14 +112,11 @@ class BranchDeviceInfo {
         } else {
             localeObject = context.getResources().getConfiguration().locale;
         }
-        if (localeObject != null) {
-            locale = Util.getLocaleString(localeObject);
-        } else {
-            locale = DEFAULT_LOCALE;
-        }
+        String locale = localeObject != null ? Util.getLocaleString(localeObject) : DEFAULT_LOCALE;
 
         // Check for app version and package.
-        appPackage = context.getPackageName();
+        String appPackage = context.getPackageName();
+        String appVersion = null;
         try {
             PackageInfo info = context.getPackageManager().getPackageInfo(appPackage, 0);
             appVersion = info.versionName;
@@ -126,9 +124,30 @@ class BranchDeviceInfo {
             // Can't happen.
         }
 
+        Snapshot fresh = new Snapshot(carrierName, displayMetrics, locale, appPackage, appVersion);
+        // Keep the old one if nothing changed, so the template is not rebuilt.
+        if (!fresh.hasSameValues(snapshot)) {
+            snapshot = fresh;
+        }
         lastSyncTimeMillis = System.currentTimeMillis();
     }
 
+    /**
+     * @return the values of the last sync. This never changes: a sync replaces it.
+     */
+    @NonNull
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private static boolean isSameDisplay(@Nullable DisplayMetrics first,
+                                         @Nullable DisplayMetrics second) {
+        if (first == null || second == null) return first == second;
+        return first.densityDpi == second.densityDpi
+                && first.widthPixels == second.widthPixels
+                && first.heightPixels == second.heightPixels;
+    }
+
     /**
      * Returns the hardware manufacturer of the current device, as defined by the manufacturer.
      *
@@ -156,19 +175,19 @@ class BranchDeviceInfo {
     @VisibleForTesting
     @NonNull
     String getLocale() {
-        return locale;
+        return snapshot.locale;
     }
 
     @VisibleForTesting
     @Nullable
     String getAppPackage() {
-        return appPackage;
+        return snapshot.appPackage;
     }
 
     @VisibleForTesting
     @Nullable
     String getAppVersion() {
-        return appVersion;
+        return snapshot.appVersion;
     }
 
     /**
@@ -202,13 +221,22 @@ class BranchDeviceInfo {
     @VisibleForTesting
     @NonNull
     String getCarrier() {
-        return carrierName;
+        return snapshot.carrierName;
     }
 
     /**
-     * Add Device Information to a JSON object.
+     * @return true if the last sync is too old
      */
-    void addDeviceInfo(@NonNull JSONObject jsonObject) {
+    boolean needsSync() {
+        return System.currentTimeMillis() > lastSyncTimeMillis + SYNC_TIME_MILLIS;
+    }
+
+    /**
+     * Syncs if the last sync is too old. This can be slow, so it is called
+     * in background by {@link BranchPayloadTemplate}.
+     */
+    @WorkerThread
+    void syncIfNeeded() {
         // Anytime we're being used, see if we should re-sync.
         // Synchronize just in case someone fires requests from different threads at once.
         synchronized (syncLock) {
@@ -223,31 +251,14 @@ class BranchDeviceInfo {
                 }
             }
         }
+    }
 
-        // Write.
-        addDeviceInfo(jsonObject, JSONKey.Brand.toString(), getBrand());
-        addDeviceInfo(jsonObject, JSONKey.Carrier.toString(), getCarrier());
-        addDeviceInfo(jsonObject, JSONKey.Locale.toString(), getLocale());
-        addDeviceInfo(jsonObject, JSONKey.Model.toString(), getModel());
-        addDeviceInfo(jsonObject, JSONKey.OSVersion.toString(), getOSVersion());
-        addDeviceInfo(jsonObject, JSONKey.OS.toString(), "ANDROID");
-        addDeviceInfo(jsonObject, JSONKey.SDK.toString(), "discovery_android");
-        addDeviceInfo(jsonObject, JSONKey.SDKVersion.toString(), BranchSearch.getVersion());
-        if (displayMetrics != null) {
-            addDeviceInfo(jsonObject, JSONKey.ScreenDpi.toString(), displayMetrics.densityDpi);
-            addDeviceInfo(jsonObject, JSONKey.ScreenWidth.toString(), displayMetrics.widthPixels);
-            addDeviceInfo(jsonObject, JSONKey.ScreenHeight.toString(), displayMetrics.heightPixels);
-        }
+    /**
+     * Add the current location to a JSON object.
+     */
+    void addLocationInfo(@NonNull JSONObject jsonObject) {
         addDeviceInfo(jsonObject, JSONKey.Latitude.toString(), latitude);
         addDeviceInfo(jsonObject, JSONKey.Longitude.toString(), longitude);
-        String appPackage = getAppPackage();
-        String appVersion = getAppVersion();
-        if (appPackage != null) {
-            addDeviceInfo(jsonObject, JSONKey.AppPackage.toString(), appPackage);
-        }
-        if (appVersion != null) {
-            addDeviceInfo(jsonObject, JSONKey.AppVersion.toString(), appVersion);
-        }
     }
 
     private static <T> void addDeviceInfo(@NonNull JSONObject jsonObject,
@@ -258,4 +269,60 @@ class BranchDeviceInfo {
         } catch (JSONException ignore) {
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The device information that only changes on sync.
+     */
+    static final class Snapshot {
+        private final String carrierName;
+        private final DisplayMetrics displayMetrics; // Never modified
+        private final String locale;
+        private final String appPackage;
+        private final String appVersion;
+
+        private Snapshot(@NonNull String carrierName,
+                         @Nullable DisplayMetrics displayMetrics,
+                         @NonNull String locale,
+                         @Nullable String appPackage,
+                         @Nullable String appVersion) {
+            this.carrierName = carrierName;
+            this.displayMetrics = displayMetrics;
+            this.locale = locale;
+            this.appPackage = appPackage;
+            this.appVersion = appVersion;
+        }
+
+        private boolean hasSameValues(@NonNull Snapshot other) {
+            return TextUtils.equals(carrierName, other.carrierName)
+                    && TextUtils.equals(locale, other.locale)
+                    && TextUtils.equals(appPackage, other.appPackage)
+                    && TextUtils.equals(appVersion, other.appVersion)
+                    && isSameDisplay(displayMetrics, other.displayMetrics);
+        }
+
+        /**
+         * Add the Device Information that only changes on sync to a JSON object.
+         */
+        void addTemplateInfo(@NonNull JSONObject jsonObject) {
+            addDeviceInfo(jsonObject, JSONKey.Brand.toString(), android.os.Build.MANUFACTURER);
+            addDeviceInfo(jsonObject, JSONKey.Carrier.toString(), carrierName);
+            addDeviceInfo(jsonObject, JSONKey.Locale.toString(), locale);
+            addDeviceInfo(jsonObject, JSONKey.Model.toString(), android.os.Build.MODEL);
+            addDeviceInfo(jsonObject, JSONKey.OSVersion.toString(), android.os.Build.VERSION.SDK_INT);
+            addDeviceInfo(jsonObject, JSONKey.OS.toString(), "ANDROID");
+            addDeviceInfo(jsonObject, JSONKey.SDK.toString(), "discovery_android");
+            addDeviceInfo(jsonObject, JSONKey.SDKVersion.toString(), BranchSearch.getVersion());
+            if (displayMetrics != null) {
+                addDeviceInfo(jsonObject, JSONKey.ScreenDpi.toString(), displayMetrics.densityDpi);
+                addDeviceInfo(jsonObject, JSONKey.ScreenWidth.toString(), displayMetrics.widthPixels);
+                addDeviceInfo(jsonObject, JSONKey.ScreenHeight.toString(), displayMetrics.heightPixels);
+            }
+            if (appPackage != null) {
+                addDeviceInfo(jsonObject, JSONKey.AppPackage.toString(), appPackage);
+            }
+            if (appVersion != null) {
+                addDeviceInfo(jsonObject, JSONKey.AppVersion.toString(), appVersion);
+            }
+        }
+    }
+}
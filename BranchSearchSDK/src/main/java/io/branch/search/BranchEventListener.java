@@ -0,0 +1,229 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Observes the lifecycle of each call made by the SDK clients, to collect connection metrics
+ * and latency samples for {@link BranchLatencyRecorder}.
+ *
+ * One instance is created per call. Every event is also forwarded to the listener of the
+ * integrator client, if one was set through {@link BranchConfiguration#setHttpClient(okhttp3.OkHttpClient)}.
+ */
+class BranchEventListener extends EventListener {
+
+    /**
+     * Creates a factory for our listeners.
+     * @param delegate the factory of the base client, whose listeners will receive all events
+     * @return a new factory
+     */
+    @NonNull
+    static EventListener.Factory factory(@Nullable final EventListener.Factory delegate) {
+        return new EventListener.Factory() {
+            @NonNull
+            @Override
+            public EventListener create(@NonNull Call call) {
+                EventListener other = delegate == null ? null : delegate.create(call);
+                return new BranchEventListener(other == null ? EventListener.NONE : other);
+            }
+        };
+    }
+
+    private final EventListener delegate;
+    private boolean connectionAcquired;
+    private boolean connectionOpened;
+
+    // Event timestamps, in nanoseconds. Zero if the event did not happen.
+    private long callStart;
+    private long dnsStart;
+    private long dnsEnd;
+    private long connectStart;
+    private long connectEnd;
+    private long secureConnectStart;
+    private long secureConnectEnd;
+    private long requestHeadersStart;
+    private long responseHeadersStart;
+    private long responseBodyStart;
+    private long responseBodyEnd;
+
+    private BranchEventListener(@NonNull EventListener delegate) {
+        this.delegate = delegate;
+    }
+
+    private void onCallFinished(@NonNull Call call) {
+        if (connectionAcquired) {
+            BranchConnectionWarmUp.onCallFinished(call.request(), !connectionOpened);
+        }
+    }
+
+    @Nullable
+    private static BranchSearchMetrics.Method getMethod(@NonNull Request request) {
+        if ("POST".equals(request.method())) {
+            return BranchSearchMetrics.Method.POST;
+        } else if ("GET".equals(request.method())) {
+            return BranchSearchMetrics.Method.GET;
+        } else {
+            return null;
+        }
+    }
+
+    private void recordLatency(@NonNull Call call, long callEnd) {
+        // Only API requests are recorded, with or without a channel.
+        Request request = call.request();
+        if (request.tag(URLConnectionTask.class) == null) return;
+        BranchSearch.Channel channel = request.tag(BranchSearch.Channel.class);
+        BranchSearchMetrics.Method method = getMethod(request);
+        if (method == null) return;
+        recordLatency(channel, method, BranchSearchMetrics.Phase.DNS, dnsStart, dnsEnd);
+        recordLatency(channel, method, BranchSearchMetrics.Phase.CONNECT, connectStart, connectEnd);
+        recordLatency(channel, method, BranchSearchMetrics.Phase.TLS, secureConnectStart, secureConnectEnd);
+        recordLatency(channel, method, BranchSearchMetrics.Phase.TTFB, requestHeadersStart, responseHeadersStart);
+        recordLatency(channel, method, BranchSearchMetrics.Phase.BODY, responseBodyStart, responseBodyEnd);
+        recordLatency(channel, method, BranchSearchMetrics.Phase.TOTAL, callStart, callEnd);
+    }
+
+    private static void recordLatency(@Nullable BranchSearch.Channel channel,
+                                      @NonNull BranchSearchMetrics.Method method,
+                                      @NonNull BranchSearchMetrics.Phase phase,
+                                      long startNanos,
+                                      long endNanos) {
+        if (startNanos == 0 || endNanos < startNanos) return;
+        BranchLatencyRecorder.record(channel, method, phase,
+                TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+        delegate.callStart(call);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+        delegate.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        dnsEnd = System.nanoTime();
+        delegate.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectionOpened = true;
+        connectStart = System.nanoTime();
+        delegate.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+        delegate.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+        secureConnectEnd = System.nanoTime();
+        delegate.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                           @Nullable Protocol protocol) {
+        connectEnd = System.nanoTime();
+        delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              @Nullable Protocol protocol, IOException ioe) {
+        delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionAcquired = true;
+        delegate.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        delegate.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestHeadersStart = System.nanoTime();
+        delegate.requestHeadersStart(call);
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        delegate.requestHeadersEnd(call, request);
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        delegate.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        delegate.requestBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        responseHeadersStart = System.nanoTime();
+        delegate.responseHeadersStart(call);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        delegate.responseHeadersEnd(call, response);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        responseBodyStart = System.nanoTime();
+        delegate.responseBodyStart(call);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        responseBodyEnd = System.nanoTime();
+        delegate.responseBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        recordLatency(call, System.nanoTime());
+        onCallFinished(call);
+        delegate.callEnd(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        // If the response came in but its body could not be read, the phases are still valid.
+        if (responseHeadersStart != 0) recordLatency(call, System.nanoTime());
+        onCallFinished(call);
+        delegate.callFailed(call, ioe);
+    }
+}
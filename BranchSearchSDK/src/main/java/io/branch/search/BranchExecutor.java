@@ -1,14 +1,8 @@
 package io.branch.search;
 
 import android.support.annotation.NonNull;
-import android.util.Log;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -25,40 +19,34 @@ import java.util.concurrent.atomic.AtomicInteger;
  * for busy threads to complete their ongoing work.
  *
  * This is the "Unbounded queues" policy that is described in the official {@link ThreadPoolExecutor}
- * class javadocs. In our case it is tuned around the {@link URLConnectionNetworkHandler} class
- * and what it does with this Executor. Specifically, it will often cancel requests and free up
- * threads, which means we will never have the "work queue growth" problem described in
- * {@link ThreadPoolExecutor}.
+ * class javadocs. In our case it backs the OkHttp dispatchers of {@link BranchHttpClient}, which
+ * are configured to never run more calls than their pool size.
+ * Calls exceeding it wait in the dispatcher queue, so the queue here stays empty and we will never
+ * have the "work queue growth" problem described in {@link ThreadPoolExecutor}.
  */
-class BranchExecutor implements Executor {
+class BranchExecutor extends ThreadPoolExecutor {
 
     private final static long KEEP_ALIVE_SECONDS = 5L;
-    private final static ThreadFactory FACTORY = new ThreadFactory() {
-        private final AtomicInteger count = new AtomicInteger(1);
-
-        @Override
-        public Thread newThread(@NonNull Runnable r) {
-            return new Thread(r, "BranchThread #" + count.getAndIncrement());
-        }
-    };
-
-    private final ThreadPoolExecutor executor;
-
-    BranchExecutor(int poolSize) {
-        executor = new ThreadPoolExecutor(
-                poolSize,
+    /**
+     * @param poolSize the maximum number of threads
+     * @param name the name prefix of the threads, so that they can be told apart in traces
+     */
+    BranchExecutor(int poolSize, @NonNull final String name) {
+        super(poolSize,
                 poolSize,
                 KEEP_ALIVE_SECONDS,
                 TimeUnit.SECONDS,
                 // requests exceeding the pool size will go into this queue.
                 new LinkedBlockingQueue<Runnable>(),
-                FACTORY
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        return new Thread(r, name + " #" + count.getAndIncrement());
+                    }
+                }
         );
-        executor.allowCoreThreadTimeOut(true);
-    }
-
-    @Override
-    public void execute(@NonNull Runnable command) {
-        executor.execute(command);
+        allowCoreThreadTimeOut(true);
     }
 }
@@ -0,0 +1,136 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Holds the {@link OkHttpClient} instances used by the SDK.
+ *
+ * All clients are derived from a single base client, so they share the same connection pool:
+ * a deep view image download can reuse the TLS connection that was opened by a search request.
+ *
+ * API calls and asset downloads have separate dispatchers, though. Images are larger and
+ * slower, so sharing threads would let a few downloads delay searches. The asset dispatcher
+ * has fewer slots and the asset client has a longer call timeout than the API one.
+ *
+ * The base client can be provided by the integrator through
+ * {@link BranchConfiguration#setHttpClient(OkHttpClient)}. In that case, its pool and
+ * dispatcher are used for API calls instead of ours.
+ *
+ * Unless the base client has its own cache, the API client gets a small HTTP disk cache. It only
+ * applies to GET requests, like the service enabled check, which can then be revalidated with
+ * ETag / If-None-Match instead of downloading the configuration again.
+ */
+class BranchHttpClient {
+
+    private static final int DISPATCHER_POOL_SIZE = 6;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long API_TIMEOUT_MILLIS = 6000;
+    private static final int ASSET_POOL_SIZE = 2;
+    private static final long ASSET_TIMEOUT_MILLIS = 30000;
+    private static final String HTTP_CACHE_DIR = "branch_http_cache";
+    private static final long HTTP_CACHE_SIZE = 256 * 1024;
+
+    private static OkHttpClient sBaseClient;
+    private static OkHttpClient sApiClient;
+    private static OkHttpClient sAssetClient;
+    private static Dispatcher sAssetDispatcher; // Kept when the base client changes.
+    private static Cache sCache; // Two caches must never share the same directory.
+
+    private BranchHttpClient() {}
+
+    /**
+     * Sets the base client. Requests that are already running are not affected.
+     * @param client a client, or null to use the default one
+     * @param cacheDir a directory for the HTTP cache of the API client, or null for no cache
+     */
+    static synchronized void install(@Nullable OkHttpClient client, @Nullable File cacheDir) {
+        boolean keepBase = client == null && sBaseClient != null && sApiClient != null;
+        if (keepBase && (cacheDir == null || sApiClient.cache() != null)) {
+            // Keep our default client and its warm connections.
+            return;
+        }
+        if (!keepBase) {
+            OkHttpClient base = client != null ? client : createDefault();
+            sBaseClient = base.newBuilder()
+                    .eventListenerFactory(BranchEventListener.factory(base.eventListenerFactory()))
+                    .build();
+        }
+        OkHttpClient.Builder builder = sBaseClient.newBuilder()
+                .callTimeout(API_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true);
+        if (cacheDir != null && sBaseClient.cache() == null) {
+            if (sCache == null) {
+                sCache = new Cache(new File(cacheDir, HTTP_CACHE_DIR), HTTP_CACHE_SIZE);
+            }
+            builder.cache(sCache);
+        }
+        sApiClient = builder.build();
+        if (sAssetDispatcher == null) {
+            sAssetDispatcher = createDispatcher(ASSET_POOL_SIZE, "BranchAssetThread");
+        }
+        sAssetClient = sBaseClient.newBuilder()
+                .dispatcher(sAssetDispatcher)
+                .callTimeout(ASSET_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Returns the client that should be used for Branch API requests.
+     * @return the API client
+     */
+    @NonNull
+    static synchronized OkHttpClient getApiClient() {
+        if (sApiClient == null) install(null, null);
+        return sApiClient;
+    }
+
+    /**
+     * Returns the client that should be used for loading images and other assets.
+     * Its calls run on their own dispatcher, and its call timeout is longer, since images
+     * can be large.
+     * @return the asset client
+     */
+    @NonNull
+    static synchronized OkHttpClient getAssetClient() {
+        if (sAssetClient == null) install(null, null);
+        return sAssetClient;
+    }
+
+    /**
+     * @return the dispatcher of the API client
+     */
+    @NonNull
+    static Dispatcher getDispatcher() {
+        return getApiClient().dispatcher();
+    }
+
+    @NonNull
+    private static OkHttpClient createDefault() {
+        return new OkHttpClient.Builder()
+                .dispatcher(createDispatcher(DISPATCHER_POOL_SIZE, "BranchThread"))
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,
+                        KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .build();
+    }
+
+    @NonNull
+    private static Dispatcher createDispatcher(int poolSize, @NonNull String name) {
+        Dispatcher dispatcher = new Dispatcher(new BranchExecutor(poolSize, name));
+        // All channels talk to the same host, so align both limits with the pool size.
+        // This way calls exceeding the pool wait in the dispatcher queue, where they can be
+        // canceled cheaply and counted, instead of silently piling up in the executor queue.
+        dispatcher.setMaxRequests(poolSize);
+        dispatcher.setMaxRequestsPerHost(poolSize);
+        return dispatcher;
+    }
+}
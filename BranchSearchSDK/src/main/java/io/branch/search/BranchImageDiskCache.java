@@ -0,0 +1,137 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * A disk cache of encoded images, one file per URL, named after the URL hash.
+ *
+ * Files are written to a temporary file and renamed, so a file that exists is always complete.
+ * Reading a file updates its modification time, and when the directory exceeds its maximum size
+ * the least recently used files are deleted.
+ */
+class BranchImageDiskCache {
+    private final File directory;
+    private final long maxSize;
+
+    BranchImageDiskCache(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached bytes for this URL.
+     * @param url the image url
+     * @return the bytes or null
+     */
+    @WorkerThread
+    @Nullable
+    synchronized byte[] get(@NonNull String url) {
+        File file = getFile(url);
+        if (!file.exists()) return null;
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(file));
+            byte[] bytes = source.readByteArray();
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        } finally {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * Whether this URL is cached.
+     * @param url the image url
+     * @return true if cached
+     */
+    @WorkerThread
+    synchronized boolean contains(@NonNull String url) {
+        return getFile(url).exists();
+    }
+
+    /**
+     * Stores the bytes for this URL and trims the cache if needed.
+     * @param url the image url
+     * @param bytes the encoded image
+     */
+    @WorkerThread
+    synchronized void put(@NonNull String url, @NonNull byte[] bytes) {
+        if (bytes.length > maxSize) return;
+        if (!directory.exists() && !directory.mkdirs()) return;
+        File file = getFile(url);
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {}
+            }
+        }
+        trim();
+    }
+
+    // Must hold lock
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long a = first.lastModified();
+                long b = second.lastModified();
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (size <= maxSize) break;
+            long length = file.length();
+            if (file.delete()) size -= length;
+        }
+    }
+
+    @NonNull
+    private File getFile(@NonNull String url) {
+        return new File(directory, ByteString.encodeUtf8(url).md5().hex());
+    }
+}
@@ -0,0 +1,353 @@
+package io.branch.search;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Loads the images of deep views, with two cache tiers.
+ *
+ * Decoded bitmaps are kept in a memory cache, bounded by their size in bytes, so a deep view
+ * that is opened again renders immediately. The encoded images are also kept in a
+ * {@link BranchImageDiskCache}, so they survive the memory cache and process restarts.
+ * Only if both miss, the image is downloaded with the asset client.
+ *
+ * Images are decoded at the size of the view that will show them, not at their own size:
+ * we read the bounds first, then subsample with {@link BitmapFactory.Options#inSampleSize} and
+ * scale the rest of the way with {@link BitmapFactory.Options#inTargetDensity}. JPEGs have no
+ * alpha, so they are decoded as {@link Bitmap.Config#RGB_565}, using half the memory.
+ * Target sizes are rounded up to a multiple of {@link #SIZE_STEP} pixels, so that the memory
+ * cache key of an image does not change with small differences in the view size.
+ * Hardware bitmaps are not used, because deep views draw images through a
+ * {@link android.graphics.BitmapShader}, which can not read them.
+ *
+ * Images can also be prefetched into the disk cache before they are needed. Prefetching runs
+ * one download at a time on the asset dispatcher, so it never takes more than one of its slots,
+ * and a new prefetch cancels the previous one. It also pauses while our API calls are running or
+ * queued, so that it does not compete with them for bandwidth. Other calls on the dispatcher,
+ * which might be shared with the app, are not counted, and each pause is capped, so a busy
+ * network can delay a prefetch but not stop it.
+ */
+class BranchImageLoader {
+    private static final String DISK_CACHE_DIR = "branch_image_cache";
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final int MAX_MEMORY_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final int SIZE_STEP = 64;
+    private static final long PREFETCH_PAUSE_MILLIS = 250;
+    private static final int MAX_PREFETCH_PAUSES = 20; // 5 seconds
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static BranchImageLoader sInstance;
+
+    /**
+     * Receives the result of {@link #load(String, Callback)} on the main thread.
+     */
+    interface Callback {
+        /**
+         * @param bitmap the image, or null if it could not be loaded
+         */
+        @MainThread
+        void onImageLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final BranchImageDiskCache diskCache;
+
+    // Guarded by this
+    private long prefetchGeneration;
+    private Call prefetchCall;
+    private Runnable prefetchRetry;
+
+    private BranchImageLoader(@NonNull Context context) {
+        int memorySize = (int) Math.min(MAX_MEMORY_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 16);
+        memoryCache = new LruCache<String, Bitmap>(memorySize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        diskCache = new BranchImageDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR),
+                DISK_CACHE_SIZE);
+    }
+
+    @NonNull
+    static synchronized BranchImageLoader getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new BranchImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the image from the memory cache, if it's there.
+     * @param url the image url
+     * @param width the target width, or 0 for the image width
+     * @param height the target height, or 0 for the image height
+     * @return a bitmap or null
+     */
+    @Nullable
+    Bitmap getCached(@NonNull String url, int width, int height) {
+        return memoryCache.get(getMemoryKey(url, normalizeSize(width), normalizeSize(height)));
+    }
+
+    /**
+     * Loads the image from the caches or from the network.
+     * The callback is invoked on the main thread, never synchronously.
+     * @param url the image url
+     * @param targetWidth the target width, or 0 for the image width
+     * @param targetHeight the target height, or 0 for the image height
+     * @param callback the callback
+     */
+    void load(@NonNull final String url,
+              int targetWidth,
+              int targetHeight,
+              @NonNull final Callback callback) {
+        final int width = normalizeSize(targetWidth);
+        final int height = normalizeSize(targetHeight);
+        final HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            deliver(null, callback);
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] bytes = diskCache.get(url);
+                Bitmap bitmap = bytes == null ? null : decode(url, bytes, width, height);
+                if (bitmap != null) {
+                    deliver(bitmap, callback);
+                } else {
+                    download(httpUrl, width, height, callback);
+                }
+            }
+        });
+    }
+
+    private void download(@NonNull final HttpUrl url,
+                          final int width,
+                          final int height,
+                          @NonNull final Callback callback) {
+        Request request = new Request.Builder().url(url).build();
+        BranchHttpClient.getAssetClient().newCall(request).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                deliver(null, callback);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                Bitmap bitmap = null;
+                try {
+                    if (response.isSuccessful()) {
+                        // Body is not null as per docs
+                        //noinspection ConstantConditions
+                        byte[] bytes = response.body().bytes();
+                        bitmap = decode(url.toString(), bytes, width, height);
+                        if (bitmap != null) diskCache.put(url.toString(), bytes);
+                    }
+                } catch (Exception ignore) {
+                } finally {
+                    response.close();
+                }
+                deliver(bitmap, callback);
+            }
+        });
+    }
+
+    /**
+     * Downloads the given images into the disk cache, one at a time, canceling any
+     * previous prefetch. Images that are already cached are skipped.
+     * @param urls the image urls, in order of priority
+     */
+    void prefetch(@NonNull List<String> urls) {
+        long generation;
+        synchronized (this) {
+            cancelPrefetch();
+            generation = prefetchGeneration;
+        }
+        prefetchNext(new ArrayList<>(urls), generation, 0);
+    }
+
+    /**
+     * Cancels the current prefetch, if any.
+     */
+    synchronized void cancelPrefetch() {
+        prefetchGeneration++;
+        if (prefetchCall != null) {
+            prefetchCall.cancel();
+            prefetchCall = null;
+        }
+        if (prefetchRetry != null) {
+            MAIN_HANDLER.removeCallbacks(prefetchRetry);
+            prefetchRetry = null;
+        }
+    }
+
+    /**
+     * @param pauses how many times this image was already held back by API calls
+     */
+    private void prefetchNext(@NonNull final List<String> urls,
+                              final long generation,
+                              final int pauses) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!urls.isEmpty() && pauses < MAX_PREFETCH_PAUSES && hasApiCalls()) {
+                    // Searches come first. Check again later, unless canceled meanwhile.
+                    Runnable retry = new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (BranchImageLoader.this) {
+                                if (generation != prefetchGeneration) return;
+                                prefetchRetry = null;
+                            }
+                            prefetchNext(urls, generation, pauses + 1);
+                        }
+                    };
+                    synchronized (BranchImageLoader.this) {
+                        if (generation != prefetchGeneration) return;
+                        prefetchRetry = retry;
+                        MAIN_HANDLER.postDelayed(retry, PREFETCH_PAUSE_MILLIS);
+                    }
+                    return;
+                }
+                while (!urls.isEmpty()) {
+                    final String url = urls.remove(0);
+                    HttpUrl httpUrl = HttpUrl.parse(url);
+                    if (httpUrl == null || diskCache.contains(url)) continue;
+                    Request request = new Request.Builder().url(httpUrl).build();
+                    Call call = BranchHttpClient.getAssetClient().newCall(request);
+                    synchronized (BranchImageLoader.this) {
+                        if (generation != prefetchGeneration) return;
+                        prefetchCall = call;
+                    }
+                    call.enqueue(new okhttp3.Callback() {
+                        @Override
+                        public void onFailure(Call call, IOException e) {
+                            if (!call.isCanceled()) prefetchNext(urls, generation, 0);
+                        }
+
+                        @Override
+                        public void onResponse(Call call, Response response) {
+                            try {
+                                if (response.isSuccessful()) {
+                                    // Body is not null as per docs
+                                    //noinspection ConstantConditions
+                                    byte[] bytes = response.body().bytes();
+                                    if (isImage(bytes)) diskCache.put(url, bytes);
+                                }
+                            } catch (Exception ignore) {
+                            } finally {
+                                response.close();
+                            }
+                            prefetchNext(urls, generation, 0);
+                        }
+                    });
+                    return;
+                }
+            }
+        });
+    }
+
+    private static boolean hasApiCalls() {
+        Dispatcher api = BranchHttpClient.getDispatcher();
+        return hasApiCall(api.runningCalls()) || hasApiCall(api.queuedCalls());
+    }
+
+    /**
+     * @param calls some calls
+     * @return true if one of them was made by a {@link URLConnectionTask}
+     */
+    @VisibleForTesting
+    static boolean hasApiCall(@NonNull List<Call> calls) {
+        for (Call call : calls) {
+            if (call.request().tag(URLConnectionTask.class) != null) return true;
+        }
+        return false;
+    }
+
+    private static boolean isImage(@NonNull byte[] bytes) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    @Nullable
+    private Bitmap decode(@NonNull String url, @NonNull byte[] bytes, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        // Views fit the image inside their bounds, so that's the size we need. Never upscale.
+        float scale = 1F;
+        if (width > 0) scale = Math.min(scale, (float) width / options.outWidth);
+        if (height > 0) scale = Math.min(scale, (float) height / options.outHeight);
+        int targetWidth = Math.max(1, (int) Math.ceil(scale * options.outWidth));
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        int sampledWidth = options.outWidth / sampleSize;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        if (sampledWidth > targetWidth) {
+            // These are not real densities: only their ratio matters, so passing the
+            // two widths makes the decoder scale by targetWidth / sampledWidth.
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+        }
+        if ("image/jpeg".equals(options.outMimeType)) {
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) return null;
+        // Scaling sets the bitmap density to inTargetDensity. Restore the default one,
+        // or views would scale the bitmap again.
+        bitmap.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+        memoryCache.put(getMemoryKey(url, width, height), bitmap);
+        return bitmap;
+    }
+
+    private static int normalizeSize(int size) {
+        if (size <= 0) return 0;
+        return (size + SIZE_STEP - 1) / SIZE_STEP * SIZE_STEP;
+    }
+
+    @NonNull
+    private static String getMemoryKey(@NonNull String url, int width, int height) {
+        return width + "x" + height + " " + url;
+    }
+
+    private static void deliver(@Nullable final Bitmap bitmap, @NonNull final Callback callback) {
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onImageLoaded(bitmap);
+            }
+        });
+    }
+}
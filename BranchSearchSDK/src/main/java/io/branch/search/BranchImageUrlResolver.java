@@ -0,0 +1,67 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Rewrites image URLs so that the image CDN serves them at the size they will be displayed.
+ *
+ * Branch app icons and many content images are served by Google's image CDN, which accepts
+ * sizing options after an '=' at the end of the path: {@code =s90} for a 90px image,
+ * {@code =w300-h200} to fit a 300x200 box, {@code -c} to crop instead. Asking for the right
+ * size can save most of the downloaded bytes, especially for list thumbnails.
+ *
+ * URLs of other hosts are returned unchanged.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BranchImageUrlResolver {
+
+    private BranchImageUrlResolver() {}
+
+    /**
+     * Returns a URL for an image that fits inside the given size, keeping its aspect ratio.
+     * @param url the image url
+     * @param width the target width in pixels, or 0 for no constraint
+     * @param height the target height in pixels, or 0 for no constraint
+     * @return the resolved url
+     */
+    @NonNull
+    public static String resolve(@NonNull String url, int width, int height) {
+        return resolve(url, width, height, false);
+    }
+
+    /**
+     * Returns a URL for an image of the given size.
+     * @param url the image url
+     * @param width the target width in pixels, or 0 for no constraint
+     * @param height the target height in pixels, or 0 for no constraint
+     * @param crop true to fill the size and crop the image, false to fit it inside the size
+     * @return the resolved url
+     */
+    @NonNull
+    public static String resolve(@NonNull String url, int width, int height, boolean crop) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null || !isResizable(httpUrl)) return url;
+        // Drop the options that the URL already has, like the =s90 of app icons.
+        String path = httpUrl.encodedPath();
+        int options = path.indexOf('=', path.lastIndexOf('/'));
+        if (options >= 0) path = path.substring(0, options);
+
+        StringBuilder builder = new StringBuilder(path);
+        if (width > 0 && height > 0) {
+            builder.append("=w").append(width).append("-h").append(height);
+            if (crop) builder.append("-c");
+        } else if (width > 0) {
+            builder.append("=w").append(width);
+        } else if (height > 0) {
+            builder.append("=h").append(height);
+        }
+        return httpUrl.newBuilder().encodedPath(builder.toString()).build().toString();
+    }
+
+    private static boolean isResizable(@NonNull HttpUrl url) {
+        String host = url.host();
+        return host.endsWith(".googleusercontent.com") || host.endsWith(".ggpht.com");
+    }
+}
@@ -0,0 +1,51 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A rolling window of the most recent latency samples.
+ * Percentiles are computed on demand, which is cheap given the small window size.
+ */
+class BranchLatencyHistogram {
+    private static final int MAX_SAMPLES = 128;
+
+    private final long[] samples = new long[MAX_SAMPLES];
+    private int size = 0;
+    private int next = 0;
+    private boolean latestPolled = true;
+
+    synchronized void add(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % MAX_SAMPLES;
+        if (size < MAX_SAMPLES) size++;
+        latestPolled = false;
+    }
+
+    /**
+     * Returns the latest sample, unless it was already returned by a previous call.
+     * @return the latest sample in milliseconds, or -1 if there is no new one
+     */
+    synchronized long pollLatest() {
+        if (latestPolled) return -1;
+        latestPolled = true;
+        return samples[(next + MAX_SAMPLES - 1) % MAX_SAMPLES];
+    }
+
+    @NonNull
+    synchronized BranchLatencyStats getStats() {
+        if (size == 0) return new BranchLatencyStats(0, -1, -1, -1);
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return new BranchLatencyStats(size,
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.95),
+                percentile(sorted, 0.99));
+    }
+
+    private static long percentile(@NonNull long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,76 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Collects latency samples of all SDK requests, per {@link BranchSearch.Channel},
+ * {@link BranchSearchMetrics.Method} and {@link BranchSearchMetrics.Phase}.
+ * Samples are recorded by {@link BranchEventListener}.
+ *
+ * The latest {@link BranchSearchMetrics.Phase#TOTAL} sample of each channel and method is also
+ * reported to the server as round trip time with the next request of the same kind, see
+ * {@link #pollLastRoundTrip(BranchSearch.Channel, BranchSearchMetrics.Method)}.
+ * API requests without a channel, like the service enabled check, share one extra slot,
+ * which is not part of the public stats.
+ */
+class BranchLatencyRecorder {
+
+    private static final int CHANNELS = BranchSearch.Channel.values().length;
+    private static final int METHODS = BranchSearchMetrics.Method.values().length;
+    private static final int PHASES = BranchSearchMetrics.Phase.values().length;
+
+    // The last slot is for requests without a channel.
+    private static final BranchLatencyHistogram[][][] sHistograms
+            = new BranchLatencyHistogram[CHANNELS + 1][METHODS][PHASES];
+
+    static {
+        for (int c = 0; c <= CHANNELS; c++) {
+            for (int m = 0; m < METHODS; m++) {
+                for (int p = 0; p < PHASES; p++) {
+                    sHistograms[c][m][p] = new BranchLatencyHistogram();
+                }
+            }
+        }
+    }
+
+    private BranchLatencyRecorder() {}
+
+    /**
+     * Records a latency sample.
+     * @param channel the channel, or null if the request has none
+     * @param method the method
+     * @param phase the phase
+     * @param millis the latency in milliseconds
+     */
+    static void record(@Nullable BranchSearch.Channel channel,
+                       @NonNull BranchSearchMetrics.Method method,
+                       @NonNull BranchSearchMetrics.Phase phase,
+                       long millis) {
+        sHistograms[slot(channel)][method.ordinal()][phase.ordinal()].add(millis);
+    }
+
+    @NonNull
+    static BranchLatencyStats getStats(@NonNull BranchSearch.Channel channel,
+                                       @NonNull BranchSearchMetrics.Method method,
+                                       @NonNull BranchSearchMetrics.Phase phase) {
+        return sHistograms[channel.ordinal()][method.ordinal()][phase.ordinal()].getStats();
+    }
+
+    /**
+     * Returns the total time of the last completed request of this kind, so that each value
+     * is reported to the server only once.
+     * @param channel the channel, or null if the request has none
+     * @param method the method
+     * @return the last round trip time in milliseconds, or -1 if not available
+     */
+    static long pollLastRoundTrip(@Nullable BranchSearch.Channel channel,
+                                  @NonNull BranchSearchMetrics.Method method) {
+        int total = BranchSearchMetrics.Phase.TOTAL.ordinal();
+        return sHistograms[slot(channel)][method.ordinal()][total].pollLatest();
+    }
+
+    private static int slot(@Nullable BranchSearch.Channel channel) {
+        return channel == null ? CHANNELS : channel.ordinal();
+    }
+}
@@ -0,0 +1,48 @@
+package io.branch.search;
+
+/**
+ * Latency percentiles computed over the most recent requests.
+ * Can be retrieved through {@link BranchSearchMetrics#getLatency(BranchSearch.Channel,
+ * BranchSearchMetrics.Method, BranchSearchMetrics.Phase)}.
+ */
+public class BranchLatencyStats {
+    private final int sampleCount;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+
+    BranchLatencyStats(int sampleCount, long p50, long p95, long p99) {
+        this.sampleCount = sampleCount;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    /**
+     * @return the number of samples these percentiles were computed from
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the median latency in milliseconds, or -1 if there are no samples
+     */
+    public long getP50Millis() {
+        return p50;
+    }
+
+    /**
+     * @return the 95th percentile latency in milliseconds, or -1 if there are no samples
+     */
+    public long getP95Millis() {
+        return p95;
+    }
+
+    /**
+     * @return the 99th percentile latency in milliseconds, or -1 if there are no samples
+     */
+    public long getP99Millis() {
+        return p99;
+    }
+}
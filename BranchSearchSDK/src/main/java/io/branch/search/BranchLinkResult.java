@@ -14,10 +14,12 @@ import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.text.TextUtils;
+import android.util.JsonReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.Iterator;
@@ -324,7 +326,7 @@ public class BranchLinkResult implements Parcelable {
         String id = getAndroidShortcutId();
         if (id == null) return false;
         IBranchShortcutHandler handler = BranchSearch.getInstance()
-                .getBranchConfiguration()
+                .getConfiguration()
                 .getShortcutHandler();
         return handler.launchShortcut(context, id, destination_store_id);
     }
@@ -347,7 +349,7 @@ public class BranchLinkResult implements Parcelable {
             Intent intent = new Intent(Intent.ACTION_VIEW);
             intent.setData(uri);
             int intentFlags = BranchSearch.getInstance()
-                    .getBranchConfiguration()
+                    .getConfiguration()
                     .getLaunchIntentFlags();
             intent.setFlags(intentFlags);
             if (!isAndroidApp) {
@@ -391,7 +393,7 @@ public class BranchLinkResult implements Parcelable {
                 Intent intent = new Intent(Intent.ACTION_VIEW);
                 intent.setData(uri);
                 int intentFlags = BranchSearch.getInstance()
-                        .getBranchConfiguration()
+                        .getConfiguration()
                         .getLaunchIntentFlags();
                 intent.setFlags(intentFlags);
                 if (forcePackage) {
@@ -454,28 +456,127 @@ public class BranchLinkResult implements Parcelable {
                 appDeepviewExtraText);
 
         // Now that we have parsed the JSON, filter ourselves out if needed.
+        return link.isValid(appIsInstalled) ? link : null;
+    }
+
+    /**
+     * Reads a link while the response is streamed. The app values are not known yet,
+     * since they might come after the links: they are set by
+     * {@link #setApp(String, String, String, String)}.
+     * @param reader a reader positioned at the start of the link object
+     * @return the link
+     * @throws IOException if reading fails
+     */
+    @NonNull
+    static BranchLinkResult createFromJson(@NonNull JsonReader reader) throws IOException {
+        BranchLinkResult link = new BranchLinkResult();
+        // Same defaults as the JSONObject parser.
+        link.entity_id = link.type = link.name = link.description = link.image_url = "";
+        link.ranking_hint = link.routing_mode = link.uri_scheme = link.web_link = "";
+        link.click_tracking_url = link.android_shortcut_id = "";
+        link.metadata = new JSONObject();
+        link.score = Float.NaN;
+        link.icon_category = ICON_CATEGORY_OTHER;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            Object value = Util.readJsonValue(reader);
+            switch (key) {
+                case LINK_ENTITY_ID_KEY:
+                    link.entity_id = Util.asString(value);
+                    break;
+                case LINK_TYPE_KEY:
+                    link.type = Util.asString(value);
+                    break;
+                case LINK_SCORE_KEY:
+                    link.score = (float) Util.asDouble(value, Double.NaN);
+                    break;
+                case LINK_NAME_KEY:
+                    link.name = Util.asString(value);
+                    break;
+                case LINK_DESC_KEY:
+                    link.description = Util.asString(value);
+                    break;
+                case LINK_IMAGE_URL_KEY:
+                    link.image_url = Util.asString(value);
+                    break;
+                case LINK_RANKING_HINT_KEY:
+                    link.ranking_hint = Util.asString(value);
+                    break;
+                case LINK_METADATA_KEY:
+                    link.metadata = value instanceof JSONObject ? (JSONObject) value : new JSONObject();
+                    break;
+                case LINK_ROUTING_MODE_KEY:
+                    link.routing_mode = Util.asString(value);
+                    break;
+                case LINK_URI_SCHEME_KEY:
+                    link.uri_scheme = Util.asString(value);
+                    break;
+                case LINK_WEB_LINK_KEY:
+                    link.web_link = Util.asString(value);
+                    break;
+                case LINK_TRACKING_KEY:
+                    link.click_tracking_url = Util.asString(value);
+                    break;
+                case LINK_ANDROID_SHORTCUT_ID_KEY:
+                    link.android_shortcut_id = Util.asString(value);
+                    break;
+                case LINK_ICON_CATEGORY:
+                    // Like optString(), which turns null into "null".
+                    link.icon_category = String.valueOf(value);
+                    break;
+                case LINK_DEEPVIEW_EXTRA_TEXT_KEY:
+                    // Stays null until setApp(), if missing.
+                    link.deepview_extra_text = String.valueOf(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.endObject();
+        return link;
+    }
+
+    /**
+     * Sets the app values of a link read by {@link #createFromJson(JsonReader)}.
+     */
+    void setApp(@NonNull String appName,
+                @NonNull String appPackageName,
+                @NonNull String appIconUrl,
+                @NonNull String appDeepviewExtraText) {
+        app_name = appName;
+        app_icon_url = appIconUrl;
+        destination_store_id = appPackageName;
+        if (deepview_extra_text == null) deepview_extra_text = appDeepviewExtraText;
+    }
+
+    /**
+     * Checks whether this link can be shown. This can make binder calls, to validate shortcuts.
+     * @param appIsInstalled whether the app of this link is installed
+     * @return false if the link should be dropped
+     */
+    boolean isValid(boolean appIsInstalled) {
         // Remove invalid shortcuts
-        String shortcutId = link.getAndroidShortcutId();
+        String shortcutId = getAndroidShortcutId();
         if (shortcutId != null) { // Need to validate
             Context context = BranchSearch.getInstance().getApplicationContext();
             IBranchShortcutHandler handler = BranchSearch.getInstance()
-                    .getBranchConfiguration()
+                    .getConfiguration()
                     .getShortcutHandler();
-            if (!handler.validateShortcut(context, shortcutId, appPackageName)) {
-                return null;
+            if (!handler.validateShortcut(context, shortcutId, destination_store_id)) {
+                return false;
             }
         }
         // If app not installed, remove non http(s)/android-app.
         if (!appIsInstalled) {
-            boolean isWeb = !TextUtils.isEmpty(link.web_link);
-            boolean isPlayStore = link.getUriScheme() != null
-                    && link.getUriScheme().startsWith("android-app://");
+            boolean isWeb = !TextUtils.isEmpty(web_link);
+            boolean isPlayStore = getUriScheme() != null
+                    && getUriScheme().startsWith("android-app://");
             if (!isWeb && !isPlayStore) {
-                return null;
+                return false;
             }
         }
-
-        return link;
+        return true;
     }
 
     @Override
@@ -0,0 +1,145 @@
+package io.branch.search;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of the installed packages.
+ *
+ * Checking whether an app is installed through the {@link PackageManager} is a binder call,
+ * and we do it for each app result. Instead, this index lists the installed packages once in
+ * background, and is then kept current by the package broadcasts, so that each check is a
+ * simple set lookup.
+ *
+ * Until the index is built, {@link #isInstalled(String)} returns null and callers should
+ * ask the {@link PackageManager} directly.
+ */
+class BranchPackageIndex {
+    private static BranchPackageIndex sInstance;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private Set<String> packages;
+    private final Map<String, Boolean> pendingChanges = new HashMap<>();
+
+    private BranchPackageIndex() {}
+
+    /**
+     * Builds the index in background and starts listening to package changes.
+     * Does nothing if the index was already started.
+     * @param context a context
+     */
+    static synchronized void start(@NonNull Context context) {
+        if (sInstance != null) return;
+        final Context appContext = context.getApplicationContext();
+        final BranchPackageIndex index = new BranchPackageIndex();
+
+        // Register first, so that we don't miss changes that happen while building.
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                index.onPackageBroadcast(intent);
+            }
+        }, filter);
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                index.build(appContext.getPackageManager());
+            }
+        });
+        sInstance = index;
+    }
+
+    /**
+     * @return the index, or null if it was not started
+     */
+    @Nullable
+    static synchronized BranchPackageIndex getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Whether the given package is installed.
+     * @param packageName a package name
+     * @return true or false, or null if the index is not built yet
+     */
+    @Nullable
+    Boolean isInstalled(@NonNull String packageName) {
+        synchronized (lock) {
+            if (packages == null) return null;
+            return packages.contains(packageName);
+        }
+    }
+
+    private void build(@NonNull PackageManager manager) {
+        Set<String> installed = new HashSet<>();
+        try {
+            List<PackageInfo> infos = manager.getInstalledPackages(0);
+            for (PackageInfo info : infos) {
+                installed.add(info.packageName);
+            }
+        } catch (Exception e) {
+            // Can fail if the list is too large for a binder transaction.
+            // Keep asking the PackageManager directly.
+            return;
+        }
+        synchronized (lock) {
+            for (Map.Entry<String, Boolean> change : pendingChanges.entrySet()) {
+                apply(installed, change.getKey(), change.getValue());
+            }
+            pendingChanges.clear();
+            packages = installed;
+        }
+    }
+
+    private void onPackageBroadcast(@NonNull Intent intent) {
+        Uri data = intent.getData();
+        String packageName = data == null ? null : data.getSchemeSpecificPart();
+        if (packageName == null) return;
+        boolean installed;
+        if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())) {
+            // When updating, the package is removed and then added back.
+            if (intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) return;
+            installed = false;
+        } else {
+            installed = true;
+        }
+        synchronized (lock) {
+            if (packages == null) {
+                pendingChanges.put(packageName, installed);
+            } else {
+                apply(packages, packageName, installed);
+            }
+        }
+    }
+
+    private static void apply(@NonNull Set<String> packages,
+                              @NonNull String packageName,
+                              boolean installed) {
+        if (installed) {
+            packages.add(packageName);
+        } else {
+            packages.remove(packageName);
+        }
+    }
+}
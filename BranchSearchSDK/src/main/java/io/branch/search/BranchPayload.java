@@ -0,0 +1,72 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONObject;
+
+/**
+ * A request payload made of the values of this request and of a shared
+ * {@link BranchPayloadTemplate}.
+ *
+ * The request values are held as they are, not copied, and must not change once the payload
+ * is sent, except for the values that {@link URLConnectionTask} adds before executing it.
+ * The template values are only reachable through the accessors below, which are the ones
+ * that {@link BranchRequestKey} needs.
+ */
+class BranchPayload {
+    private final JSONObject values;
+    private final BranchPayloadTemplate template;
+
+    BranchPayload(@NonNull JSONObject values, @Nullable BranchPayloadTemplate template) {
+        this.values = values;
+        this.template = template;
+    }
+
+    /**
+     * Creates a payload without template values.
+     * @param values the request values
+     */
+    BranchPayload(@NonNull JSONObject values) {
+        this(values, null);
+    }
+
+    /**
+     * @return the values of this request, without the template ones
+     */
+    @NonNull
+    JSONObject getValues() {
+        return values;
+    }
+
+    /**
+     * @return the template, or null if this payload has none
+     */
+    @Nullable
+    BranchPayloadTemplate getTemplate() {
+        return template;
+    }
+
+    @NonNull
+    String getBranchKey() {
+        return optString(BranchConfiguration.JSONKey.BranchKey.toString());
+    }
+
+    @NonNull
+    String getLocale() {
+        return optString(BranchDeviceInfo.JSONKey.Locale.toString());
+    }
+
+    @NonNull
+    String getCountry() {
+        return optString(BranchConfiguration.JSONKey.Country.toString());
+    }
+
+    // Request values win over the template ones, like in the serialized payload.
+    @NonNull
+    private String optString(@NonNull String name) {
+        Object value = values.opt(name);
+        if (value == null && template != null) value = template.opt(name);
+        return value == null || value == JSONObject.NULL ? "" : value.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package io.branch.search;
+
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * The part of the request payload that comes from {@link BranchDeviceInfo} and
+ * {@link BranchConfiguration} and is the same for all requests: device, app, key, country,
+ * locale and GAID. It is serialized once into a byte fragment, which {@link BranchPayloadWriter}
+ * splices into each payload, and is rebuilt only when one of its sources changes.
+ *
+ * Values that change on each request, like the location and the extras, are not part of it.
+ *
+ * Templates are immutable and published through a volatile field, so requests read them without
+ * locking. When the sources need to be synced, requests do not wait: they keep using the current
+ * template, while the sync and the new template are done in background. This way no request pays
+ * for the TelephonyManager, WindowManager and PackageManager calls of a sync.
+ *
+ * Templates are only built from immutable sources: a {@link BranchDeviceInfo.Snapshot} and a
+ * published {@link BranchConfiguration}, which is replaced rather than modified. A request only
+ * builds one itself when there is none yet for the current sources, for example right after
+ * {@link BranchSearch#setBranchConfiguration(BranchConfiguration)}.
+ */
+class BranchPayloadTemplate {
+    private static volatile BranchPayloadTemplate sTemplate;
+    private static final AtomicLong sNextId = new AtomicLong();
+    private static final AtomicBoolean sRefreshing = new AtomicBoolean();
+
+    private final BranchDeviceInfo.Snapshot device;
+    private final BranchConfiguration configuration;
+    private final int configurationVersion;
+    private final long id;
+    private final JSONObject values;
+    private final ByteString fragment;
+
+    private BranchPayloadTemplate(@NonNull BranchDeviceInfo.Snapshot device,
+                                  @NonNull BranchConfiguration configuration) {
+        // Read the version first: if the configuration is changed through setters while
+        // we build, which published ones never are, we'll just build again.
+        this.device = device;
+        this.configuration = configuration;
+        this.configurationVersion = configuration.getTemplateVersion();
+        this.id = sNextId.getAndIncrement();
+        this.values = new JSONObject();
+        device.addTemplateInfo(values);
+        configuration.addTemplateInfo(values);
+        // Drop the braces, so the fragment can be spliced with other values.
+        Buffer buffer = BranchPayloadWriter.write(values);
+        long size = buffer.size();
+        ByteString bytes = buffer.readByteString();
+        this.fragment = size > 2 ? bytes.substring(1, (int) size - 1) : ByteString.EMPTY;
+    }
+
+    /**
+     * Returns the template for these sources. If the sources need to be synced, this starts
+     * a sync in background and returns the current template. If there is no template for the
+     * current sources yet, it is built from their immutable values, which is cheap.
+     * @param info the device info
+     * @param configuration the configuration
+     * @return the template
+     */
+    @NonNull
+    static BranchPayloadTemplate get(@NonNull BranchDeviceInfo info,
+                                     @NonNull BranchConfiguration configuration) {
+        if (info.needsSync() || configuration.needsSync()) {
+            refresh(info, configuration);
+        }
+        BranchDeviceInfo.Snapshot device = info.getSnapshot();
+        BranchPayloadTemplate template = sTemplate;
+        if (template == null || !template.isCurrent(device, configuration)) {
+            // Concurrent requests might both build one. That's fine, they are equivalent.
+            template = new BranchPayloadTemplate(device, configuration);
+            sTemplate = template;
+        }
+        return template;
+    }
+
+    private static void refresh(@NonNull final BranchDeviceInfo info,
+                                @NonNull final BranchConfiguration configuration) {
+        if (!sRefreshing.compareAndSet(false, true)) return;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Publishes a new snapshot if something changed.
+                    info.syncIfNeeded();
+                    BranchConfiguration current = configuration;
+                    BranchSearch search = BranchSearch.getInstance();
+                    if (current.needsSync() && search != null) {
+                        // Publishes a new configuration, which the next requests will use.
+                        search.syncAdTracking();
+                        current = search.getConfiguration();
+                    }
+                    BranchDeviceInfo.Snapshot device = info.getSnapshot();
+                    BranchPayloadTemplate template = sTemplate;
+                    if (template == null || !template.isCurrent(device, current)) {
+                        sTemplate = new BranchPayloadTemplate(device, current);
+                    }
+                } finally {
+                    sRefreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private boolean isCurrent(@NonNull BranchDeviceInfo.Snapshot device,
+                              @NonNull BranchConfiguration configuration) {
+        return this.device == device
+                && this.configuration == configuration
+                && this.configurationVersion == configuration.getTemplateVersion();
+    }
+
+    /**
+     * @return an id that is different for each template
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @param name a key
+     * @return the template value for this key, or null
+     */
+    @Nullable
+    Object opt(@NonNull String name) {
+        return values.opt(name);
+    }
+
+    /**
+     * @return the serialized values, without the surrounding braces
+     */
+    @NonNull
+    ByteString getFragment() {
+        return fragment;
+    }
+}
@@ -0,0 +1,291 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Serializes request payloads with a {@link JsonWriter} straight into the Okio sink of the
+ * request, while OkHttp writes the {@link RequestBody} on the dispatcher thread.
+ *
+ * This avoids the intermediate strings of {@link JSONObject#toString()} and, for encrypted
+ * requests, the cipher text string and the second JSONObject that wraps it: the payload goes
+ * through the cipher and the Base64 encoder into the envelope as it is written. Number
+ * formatting follows the one of {@link JSONObject}, so the bytes on the wire do not change.
+ *
+ * For a {@link BranchPayload}, only the request values are written: the template values are
+ * copied from their pre-serialized fragment.
+ */
+class BranchPayloadWriter {
+    static final MediaType POST_JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private BranchPayloadWriter() {}
+
+    /**
+     * Writes the given object as UTF-8 JSON.
+     * @param object an object
+     * @return a buffer holding the object
+     */
+    @NonNull
+    static Buffer write(@NonNull JSONObject object) {
+        Buffer buffer = new Buffer();
+        try {
+            JsonWriter writer = new JsonWriter(new SinkWriter(buffer, null, false));
+            writeValue(writer, object);
+            writer.flush();
+        } catch (IOException ignore) {
+            // Can't happen, buffers don't throw.
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the given payload as UTF-8 JSON.
+     * @param payload a payload
+     * @param sink the sink to write to
+     */
+    static void write(@NonNull BranchPayload payload,
+                      @NonNull BufferedSink sink) throws IOException {
+        JSONObject values = payload.getValues();
+        BranchPayloadTemplate template = payload.getTemplate();
+        ByteString fragment = template == null ? null : template.getFragment();
+        if (fragment != null && fragment.size() == 0) fragment = null;
+        // Splice: {template,values}
+        JsonWriter writer = new JsonWriter(new SinkWriter(sink, fragment, values.length() > 0));
+        writeValue(writer, values);
+        writer.flush();
+    }
+
+    /**
+     * Writes the envelope of an encrypted request, encrypting the payload while it is written.
+     * @param payload a payload
+     * @param iv the initialization vector
+     * @param sink the sink to write to
+     */
+    static void writeEncrypted(@NonNull BranchPayload payload,
+                               @NonNull String iv,
+                               @NonNull BufferedSink sink) throws IOException {
+        OutputStream cipherStream;
+        try {
+            cipherStream = Branchcryption.encrypt(new Base64ValueStream(sink), iv);
+        } catch (Exception e) {
+            throw new IOException("Could not encrypt the payload", e);
+        }
+        writeEnvelope(payload, iv, sink, cipherStream);
+    }
+
+    /**
+     * Writes the envelope of an encrypted request around the output of the given stream.
+     * @param payload a payload
+     * @param iv the initialization vector
+     * @param sink the sink to write to
+     * @param cipherStream a stream that encrypts and encodes into a {@link Base64ValueStream}
+     *                     of the sink, closed when the payload is written
+     */
+    @VisibleForTesting
+    static void writeEnvelope(@NonNull BranchPayload payload,
+                              @NonNull String iv,
+                              @NonNull BufferedSink sink,
+                              @NonNull OutputStream cipherStream) throws IOException {
+        // Keys and IV are plain ASCII and the Base64 alphabet needs no escaping.
+        sink.writeUtf8("{\"").writeUtf8(Branchcryption.jsonKeyData).writeUtf8("\":\"");
+        BufferedSink encrypted = Okio.buffer(Okio.sink(cipherStream));
+        write(payload, encrypted);
+        encrypted.close(); // Pads the last block and flushes the encoder.
+        sink.writeUtf8("\",\"").writeUtf8(Branchcryption.jsonKeyIV).writeUtf8("\":\"");
+        sink.writeUtf8(iv).writeUtf8("\"}");
+    }
+
+    /**
+     * Returns a body that writes and, if an IV is given, encrypts the payload straight into
+     * the request each time OkHttp sends it. This happens on the dispatcher thread that
+     * executes the call, so the caller of {@link okhttp3.Call#enqueue(okhttp3.Callback)} does
+     * not pay for it. The length is not known upfront, so the body is sent in chunks.
+     * @param payload a payload, which must not change from now on
+     * @param iv the initialization vector, or null to send the payload in plain text
+     * @return a request body
+     */
+    @NonNull
+    static RequestBody createBody(@NonNull final BranchPayload payload, @Nullable final String iv) {
+        return new RequestBody() {
+            @Nullable
+            @Override
+            public MediaType contentType() {
+                return POST_JSON;
+            }
+
+            @Override
+            public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                if (iv == null) {
+                    write(payload, sink);
+                } else {
+                    writeEncrypted(payload, iv, sink);
+                }
+            }
+        };
+    }
+
+    private static void writeValue(@NonNull JsonWriter writer, @Nullable Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            writer.nullValue();
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            writer.beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                writer.name(key);
+                writeValue(writer, object.opt(key));
+            }
+            writer.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writer.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(writer, array.opt(i));
+            }
+            writer.endArray();
+        } else if (value instanceof Boolean) {
+            writer.value(((Boolean) value).booleanValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (number == (long) number) {
+                // Like JSONObject, write 1.0 as 1.
+                writer.value((long) number);
+            } else {
+                writer.value(number);
+            }
+        } else if (value instanceof Number) {
+            writer.value(((Number) value).longValue());
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * A {@link Writer} that encodes characters as UTF-8 straight into a sink, without the
+     * byte buffer of an {@link java.io.OutputStreamWriter}. If a splice is given, it is
+     * written right after the first character, which is the opening brace of the values.
+     * The sink belongs to the caller, so it is neither flushed nor closed.
+     */
+    @VisibleForTesting
+    static final class SinkWriter extends Writer {
+        private final BufferedSink sink;
+        private ByteString splice;
+        private final boolean spliceComma;
+        private char highSurrogate;
+
+        SinkWriter(@NonNull BufferedSink sink, @Nullable ByteString splice, boolean spliceComma) {
+            this.sink = sink;
+            this.splice = splice;
+            this.spliceComma = spliceComma;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            char ch = (char) c;
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(ch)) {
+                    sink.writeUtf8CodePoint(Character.toCodePoint(high, ch));
+                    return;
+                }
+                sink.writeByte('?'); // Like OutputStreamWriter, for a broken pair.
+            }
+            if (ch < 0x80) {
+                sink.writeByte(ch);
+            } else if (Character.isHighSurrogate(ch)) {
+                highSurrogate = ch;
+                return;
+            } else {
+                sink.writeUtf8CodePoint(ch);
+            }
+            if (splice != null) {
+                sink.write(splice);
+                if (spliceComma) sink.writeByte(',');
+                splice = null;
+            }
+        }
+
+        @Override
+        public void write(@NonNull char[] chars, int offset, int count) throws IOException {
+            // JsonWriter only writes strings and single chars, so this is rare.
+            write(new String(chars, offset, count), 0, count);
+        }
+
+        @Override
+        public void write(@NonNull String string, int offset, int count) throws IOException {
+            // Writer would copy the string into a char array first.
+            int end = offset + count;
+            // The splice and a pending high surrogate need the char path.
+            while (offset < end && (splice != null || highSurrogate != 0)) {
+                write(string.charAt(offset++));
+            }
+            if (offset == end) return;
+            // A high surrogate at the end might be completed by the next write.
+            char last = string.charAt(end - 1);
+            boolean pending = Character.isHighSurrogate(last);
+            if (pending) end--;
+            // Encodes pairs, and broken ones as '?', like the char path.
+            if (offset < end) sink.writeUtf8(string, offset, end);
+            if (pending) highSurrogate = last;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Writes Base64 text as the content of a JSON string. Line breaks are escaped, except the
+     * last one, which is dropped like {@link String#trim()} used to do.
+     */
+    @VisibleForTesting
+    static final class Base64ValueStream extends OutputStream {
+        private final BufferedSink sink;
+        private boolean lineBreak;
+
+        Base64ValueStream(@NonNull BufferedSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (lineBreak) {
+                sink.writeByte('\\').writeByte('n');
+                lineBreak = false;
+            }
+            if (b == '\n') {
+                lineBreak = true;
+            } else {
+                sink.writeByte(b);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] bytes, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count; i++) {
+                write(bytes[i]);
+            }
+        }
+    }
+}
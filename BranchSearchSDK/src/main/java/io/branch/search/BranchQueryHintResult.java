@@ -19,9 +19,15 @@ public class BranchQueryHintResult implements Parcelable {
     private static final String KEY_RESULTS = "results";
 
     private final List<BranchQueryHint> hints;
+    private final boolean fromCache;
+    private final boolean stale;
 
-    private BranchQueryHintResult(@NonNull List<BranchQueryHint> hints) {
+    private BranchQueryHintResult(@NonNull List<BranchQueryHint> hints,
+                                  boolean fromCache,
+                                  boolean stale) {
         this.hints = hints;
+        this.fromCache = fromCache;
+        this.stale = stale;
     }
 
     @NonNull
@@ -29,6 +35,45 @@ public class BranchQueryHintResult implements Parcelable {
         return hints;
     }
 
+    /**
+     * @return true if these hints were read from the SDK storage instead of the network.
+     * @see BranchSearch#getCachedQueryHints()
+     */
+    @SuppressWarnings("unused")
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * @return true if these hints were served from storage while fresh hints are requested
+     * in background. The fresh hints are delivered again, only if they differ.
+     * @see BranchConfiguration#setStaleWhileRevalidate(long)
+     */
+    @SuppressWarnings("unused")
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @param other another result
+     * @return true if both results contain the same hints, in the same order
+     */
+    boolean hasSameContent(@NonNull BranchQueryHintResult other) {
+        if (hints.size() != other.hints.size()) return false;
+        for (int i = 0; i < hints.size(); i++) {
+            if (!hints.get(i).getQuery().equals(other.hints.get(i).getQuery())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    static BranchQueryHintResult createFromCache(@NonNull List<BranchQueryHint> hints,
+                                                 boolean stale) {
+        return new BranchQueryHintResult(hints, true, stale);
+    }
+
     @NonNull
     static BranchQueryHintResult createFromJson(@NonNull JSONObject jsonObject) {
         List<BranchQueryHint> hints = new ArrayList<>();
@@ -40,7 +85,7 @@ public class BranchQueryHintResult implements Parcelable {
                 }
             }
         } catch (JSONException ignore) { }
-        return new BranchQueryHintResult(hints);
+        return new BranchQueryHintResult(hints, false, false);
     }
 
     @Override
@@ -58,7 +103,7 @@ public class BranchQueryHintResult implements Parcelable {
         public BranchQueryHintResult createFromParcel(Parcel source) {
             List<BranchQueryHint> hints = new ArrayList<>();
             source.readTypedList(hints, BranchQueryHint.CREATOR);
-            return new BranchQueryHintResult(hints);
+            return new BranchQueryHintResult(hints, false, false);
         }
 
         @Override
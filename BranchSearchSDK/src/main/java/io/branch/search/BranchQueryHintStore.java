@@ -0,0 +1,192 @@
+package io.branch.search;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the last query hints in app-private storage, so that they are available
+ * synchronously on the next start, before any network request completes.
+ *
+ * The file is small and uses a compact binary format: a version, the save time,
+ * the Branch key that the hints belong to, and then the hint strings.
+ * It is written atomically by writing a temporary file and renaming it.
+ *
+ * Reads never touch the disk: the file is loaded in background by {@link #preload()}, and
+ * {@link #get(String, boolean)} only looks at the loaded hints, under a lock that is never
+ * held during I/O. Hints are only returned for the Branch key they were saved with, which is
+ * passed on each call, so a key changed through
+ * {@link BranchSearch#setBranchConfiguration(BranchConfiguration)} is respected.
+ *
+ * The store never refreshes itself. It is only written when the app requests hints through
+ * {@link BranchSearch#queryHint(BranchQueryHintRequest, IBranchQueryHintEvents)}, so if the app
+ * stops doing that, the stored hints just expire after the max age.
+ */
+class BranchQueryHintStore {
+    private static final String FILE_NAME = "branch_query_hints";
+    private static final int VERSION = 1;
+
+    private final Object lock = new Object();
+    // Held while writing, so that saves reach the file in order. Never taken by readers.
+    private final Object fileLock = new Object();
+    private final File file;
+    private final long maxAgeMillis;
+
+    // Guarded by lock
+    private boolean loaded;
+    private List<BranchQueryHint> hints;
+    private String hintsBranchKey;
+    private long savedAtMillis;
+
+    BranchQueryHintStore(@NonNull Context context, long maxAgeMillis) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Starts loading the file in background. Until it is loaded, {@link #get(String, boolean)}
+     * returns null.
+     */
+    void preload() {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Returns the stored hints, if they belong to the given key and are not too old.
+     * This never reads the file, so it is safe to call on the main thread.
+     * @param branchKey the current Branch key
+     * @param stale whether the hints will be revalidated
+     * @return the hints or null
+     */
+    @Nullable
+    BranchQueryHintResult get(@Nullable String branchKey, boolean stale) {
+        synchronized (lock) {
+            if (hints == null || !hintsBranchKey.equals(branchKey)) return null;
+            long age = System.currentTimeMillis() - savedAtMillis;
+            if (age < 0 || age > maxAgeMillis) return null;
+            return BranchQueryHintResult.createFromCache(new ArrayList<>(hints), stale);
+        }
+    }
+
+    /**
+     * Stores new hints, replacing the previous ones.
+     * @param branchKey the Branch key of the request that returned the hints
+     * @param result the hints
+     */
+    @WorkerThread
+    void save(@NonNull String branchKey, @NonNull BranchQueryHintResult result) {
+        List<BranchQueryHint> list = new ArrayList<>(result.getHints());
+        long savedAt = System.currentTimeMillis();
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(VERSION);
+            out.writeLong(savedAt);
+            out.writeUTF(branchKey);
+            out.writeInt(list.size());
+            for (BranchQueryHint hint : list) {
+                out.writeUTF(hint.getQuery());
+            }
+            out.close();
+            bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            // A string longer than 64KB. Keep the hints in memory only.
+            bytes = null;
+        }
+
+        synchronized (fileLock) {
+            synchronized (lock) {
+                // A newer save got here first.
+                if (savedAt < savedAtMillis) return;
+                hints = list;
+                hintsBranchKey = branchKey;
+                savedAtMillis = savedAt;
+                loaded = true;
+            }
+            if (bytes != null) write(bytes);
+        }
+    }
+
+    // Must hold fileLock
+    private void write(@NonNull byte[] bytes) {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } catch (IOException ignore) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * Loads the file, unless hints were already loaded or saved.
+     */
+    @WorkerThread
+    void load() {
+        synchronized (lock) {
+            if (loaded) return;
+        }
+        if (!file.exists()) return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) return;
+            long savedAt = in.readLong();
+            String branchKey = in.readUTF();
+            int count = in.readInt();
+            List<BranchQueryHint> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(new BranchQueryHint(in.readUTF()));
+            }
+            synchronized (lock) {
+                // Hints saved meanwhile are newer than the file.
+                if (loaded) return;
+                loaded = true;
+                hints = list;
+                hintsBranchKey = branchKey;
+                savedAtMillis = savedAt;
+            }
+        } catch (IOException ignore) {
+            // Corrupted or truncated. It will be replaced by the next save.
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {}
+            }
+        }
+    }
+}
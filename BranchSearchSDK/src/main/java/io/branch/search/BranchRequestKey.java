@@ -0,0 +1,169 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds a canonical string for a request, so that identical requests can be recognized.
+ *
+ * Object keys are sorted, so the key does not depend on the order in which values were added
+ * to the payload. Values that change on every request without changing its meaning, like the
+ * timestamp and the last round trip time, are left out.
+ *
+ * Cache keys are looser: only the values that affect the results are used, and they are normalized
+ * so that slightly different requests can share the same results.
+ */
+class BranchRequestKey {
+    private static final String KEY_LAST_RTT = "lr_rtt";
+    // Locations are rounded to 0.01 degrees, which is about 1km.
+    private static final double LOCATION_QUANTUM = 100D;
+
+    private BranchRequestKey() {}
+
+    @NonNull
+    static String create(@NonNull String url, @Nullable BranchPayload payload) {
+        StringBuilder builder = new StringBuilder(url);
+        if (payload != null) {
+            builder.append('#');
+            appendObject(builder, payload.getValues(), true);
+            BranchPayloadTemplate template = payload.getTemplate();
+            if (template != null) {
+                // Template values are the same for requests with the same template.
+                builder.append('#').append(template.getId());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Creates the cache key of a search request: the normalized query, the result options,
+     * url, Branch key, locale, country, a rounded location and the request extras.
+     * @param url the request url
+     * @param payload the search request payload
+     * @return the key
+     */
+    @NonNull
+    static String createSearchCacheKey(@NonNull String url, @NonNull BranchPayload payload) {
+        return createSearchCacheKey(url, payload,
+                payload.getValues().optString(BranchSearchRequest.KEY_USER_QUERY));
+    }
+
+    /**
+     * Like {@link #createSearchCacheKey(String, BranchPayload)}, but for another query with the
+     * same request options. Useful to look for the results of a prefix.
+     * @param url the request url
+     * @param payload the search request payload
+     * @param query the query
+     * @return the key
+     */
+    @NonNull
+    static String createSearchCacheKey(@NonNull String url,
+                                       @NonNull BranchPayload payload,
+                                       @NonNull String query) {
+        JSONObject values = payload.getValues();
+        StringBuilder builder = new StringBuilder();
+        builder.append(normalizeQuery(query));
+        builder.append('|').append(values.optInt(BranchSearchRequest.KEY_LIMIT_APP_RESULTS));
+        builder.append('|').append(values.optInt(BranchSearchRequest.KEY_LIMIT_LINK_RESULTS));
+        builder.append('|').append(values.optBoolean(BranchSearchRequest.KEY_DO_NOT_MODIFY));
+        appendCacheContext(builder, url, payload);
+        return builder.toString();
+    }
+
+    /**
+     * Creates the part of an auto suggest cache key that does not depend on the query:
+     * the result limit, url, Branch key, locale, country, a rounded location and the request
+     * extras. The full key is this context followed by the normalized query, so that the
+     * entries for all prefixes of a query can be found by appending each prefix.
+     * @param url the request url
+     * @param payload the auto suggest request payload
+     * @return the key context
+     */
+    @NonNull
+    static String createAutoSuggestCacheContext(@NonNull String url, @NonNull BranchPayload payload) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(payload.getValues().optInt(BranchAutoSuggestRequest.KEY_MAX_RESULTS));
+        appendCacheContext(builder, url, payload);
+        builder.append('|');
+        return builder.toString();
+    }
+
+    private static void appendCacheContext(@NonNull StringBuilder builder,
+                                           @NonNull String url,
+                                           @NonNull BranchPayload payload) {
+        JSONObject values = payload.getValues();
+        // Results of another endpoint or app must never be mixed up with these.
+        builder.append('|').append(url);
+        builder.append('|').append(payload.getBranchKey());
+        builder.append('|').append(payload.getLocale());
+        builder.append('|').append(payload.getCountry());
+        builder.append('|').append(quantize(values.optDouble(BranchDeviceInfo.JSONKey.Latitude.toString(), 0D)));
+        builder.append(',').append(quantize(values.optDouble(BranchDeviceInfo.JSONKey.Longitude.toString(), 0D)));
+        builder.append('|');
+        appendValue(builder, values.opt(BranchDiscoveryRequest.KEY_EXTRA));
+    }
+
+    /**
+     * Normalizes a user query: surrounding and repeated whitespace is dropped, and
+     * the query is lower cased.
+     * @param query a query
+     * @return the normalized query
+     */
+    @NonNull
+    static String normalizeQuery(@NonNull String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static long quantize(double degrees) {
+        return Math.round(degrees * LOCATION_QUANTUM);
+    }
+
+    private static void appendObject(@NonNull StringBuilder builder,
+                                     @NonNull JSONObject object,
+                                     boolean root) {
+        List<String> keys = new ArrayList<>();
+        Iterator<String> iterator = object.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (root && (key.equals(BranchDiscoveryRequest.KEY_TIMESTAMP)
+                    || key.equals(KEY_LAST_RTT))) continue;
+            keys.add(key);
+        }
+        Collections.sort(keys);
+        builder.append('{');
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) builder.append(',');
+            String key = keys.get(i);
+            builder.append(JSONObject.quote(key)).append(':');
+            appendValue(builder, object.opt(key));
+        }
+        builder.append('}');
+    }
+
+    private static void appendValue(@NonNull StringBuilder builder, @Nullable Object value) {
+        if (value instanceof JSONObject) {
+            appendObject(builder, (JSONObject) value, false);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            builder.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) builder.append(',');
+                appendValue(builder, array.opt(i));
+            }
+            builder.append(']');
+        } else if (value instanceof String) {
+            builder.append(JSONObject.quote((String) value));
+        } else {
+            builder.append(value);
+        }
+    }
+}
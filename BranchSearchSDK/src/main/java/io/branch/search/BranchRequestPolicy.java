@@ -0,0 +1,95 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Controls when the requests of a {@link BranchSearch.Channel} are sent to the network.
+ *
+ * Search boxes typically fire a request on every keystroke. With the default policy each request
+ * is sent immediately and cancels the previous one, so a fast typist produces dozens of requests
+ * that are started and then thrown away. The other policies hold requests back for a while and only
+ * send the most recent one. Requests that are replaced before being sent receive a
+ * {@link BranchSearchError.ERR_CODE#REQUEST_CANCELED} error, just like canceled requests.
+ *
+ * Policies can be set through {@link BranchConfiguration#setRequestPolicy(BranchSearch.Channel, BranchRequestPolicy)}.
+ */
+public class BranchRequestPolicy {
+
+    enum Mode {
+        IMMEDIATE,
+        DEBOUNCE,
+        THROTTLE,
+        LEADING_AND_TRAILING
+    }
+
+    private static final BranchRequestPolicy IMMEDIATE
+            = new BranchRequestPolicy(Mode.IMMEDIATE, 0);
+
+    private final Mode mode;
+    private final long intervalMillis;
+
+    private BranchRequestPolicy(@NonNull Mode mode, long intervalMillis) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Every request is sent as soon as it is made. This is the default.
+     * @return a policy
+     */
+    @NonNull
+    public static BranchRequestPolicy immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * A request is sent only after no other request was made for the given delay.
+     * While the user keeps typing, nothing is sent.
+     * @param delayMillis the quiet time, in milliseconds
+     * @return a policy
+     */
+    @SuppressWarnings("WeakerAccess")
+    @NonNull
+    public static BranchRequestPolicy debounce(long delayMillis) {
+        return create(Mode.DEBOUNCE, delayMillis);
+    }
+
+    /**
+     * At most one request is sent per interval, at the end of the interval. The interval
+     * starts with the first request, and only the latest request made during it is sent.
+     * @param intervalMillis the interval, in milliseconds
+     * @return a policy
+     */
+    @SuppressWarnings("WeakerAccess")
+    @NonNull
+    public static BranchRequestPolicy throttle(long intervalMillis) {
+        return create(Mode.THROTTLE, intervalMillis);
+    }
+
+    /**
+     * Like {@link #throttle(long)}, but the request that starts the interval is sent immediately.
+     * The first keystroke gets results right away, and later ones are sent at most once per interval.
+     * @param intervalMillis the interval, in milliseconds
+     * @return a policy
+     */
+    @SuppressWarnings("WeakerAccess")
+    @NonNull
+    public static BranchRequestPolicy leadingAndTrailing(long intervalMillis) {
+        return create(Mode.LEADING_AND_TRAILING, intervalMillis);
+    }
+
+    @NonNull
+    private static BranchRequestPolicy create(@NonNull Mode mode, long intervalMillis) {
+        if (intervalMillis <= 0) return IMMEDIATE;
+        return new BranchRequestPolicy(mode, intervalMillis);
+    }
+
+    @NonNull
+    Mode getMode() {
+        return mode;
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
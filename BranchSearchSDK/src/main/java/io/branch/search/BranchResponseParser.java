@@ -0,0 +1,106 @@
+package io.branch.search;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import org.json.JSONObject;
+
+/**
+ * Turns a raw server response into a result object and delivers it.
+ *
+ * Parsing happens on the worker thread that executed the request, because it can be expensive:
+ * {@link BranchAppResult} checks whether each app is installed and {@link BranchLinkResult}
+ * validates shortcuts through the {@link IBranchShortcutHandler}, and both are binder calls.
+ * Only the finished result is handed to the main thread through {@link #onResult(Object)}.
+ *
+ * When identical requests are coalesced, only the first parser parses the response and the
+ * others receive its result through {@link #adopt(Object)}.
+ *
+ * Parsers of large responses can also implement {@link BranchStreamingParser}: successful
+ * responses are then parsed while they are downloaded, see {@link #getStreamingParser()}.
+ *
+ * @param <T> the parsed result type
+ */
+abstract class BranchResponseParser<T> {
+
+    /**
+     * Parses a successful response. Called on a worker thread.
+     * @param response the server response, never a {@link BranchSearchError}
+     * @return the parsed result
+     */
+    @WorkerThread
+    @NonNull
+    abstract T parse(@NonNull JSONObject response);
+
+    /**
+     * Returns the parser of successful responses while they are downloaded, if any.
+     * By default, returns this parser if it implements {@link BranchStreamingParser}.
+     * @return a streaming parser or null
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    BranchStreamingParser<T> getStreamingParser() {
+        return this instanceof BranchStreamingParser ? (BranchStreamingParser<T>) this : null;
+    }
+
+    /**
+     * Called on the main thread with the result of {@link #parse(JSONObject)}.
+     * @param result the parsed result
+     */
+    @MainThread
+    abstract void onResult(@NonNull T result);
+
+    /**
+     * Called on the main thread if the request failed or was canceled.
+     * @param error the error
+     */
+    @MainThread
+    abstract void onError(@NonNull BranchSearchError error);
+
+    /**
+     * Adapts a result that was parsed by the parser of an identical request, for example to refer
+     * to this parser's request object. Called on the main thread. By default, returns the same result.
+     * @param result the result parsed by another parser of the same type
+     * @return the result for this parser
+     */
+    @MainThread
+    @NonNull
+    T adopt(@NonNull T result) {
+        return result;
+    }
+
+    /**
+     * Whether two results have the same content, so that a revalidated result does not
+     * need to be delivered again. By default, results are never considered the same.
+     * @param fresh a result just parsed
+     * @param stale a result that was already delivered
+     * @return true if they have the same content
+     */
+    @MainThread
+    boolean isSameResult(@NonNull T fresh, @NonNull T stale) {
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @MainThread
+    @NonNull
+    final Object adoptResult(@NonNull Object result) {
+        return adopt((T) result);
+    }
+
+    /**
+     * Dispatches either the parsed result or an error to the right callback.
+     * @param result an object returned by {@link #parse(JSONObject)} or a {@link BranchSearchError}
+     */
+    @SuppressWarnings("unchecked")
+    @MainThread
+    final void dispatch(@NonNull Object result) {
+        if (result instanceof BranchSearchError) {
+            onError((BranchSearchError) result);
+        } else {
+            onResult((T) result);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.branch.search;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of parsed results, bounded both in size and in age.
+ * When full, the least recently used entries are evicted. Entries older than the
+ * time to live are only returned by {@link #getStale(String)}, within the stale window,
+ * and by {@link #getAny(String)}, which is meant as a last resort when the network is down.
+ *
+ * This class is thread safe.
+ *
+ * @param <T> the result type
+ */
+class BranchResultCache<T> {
+
+    private final LruCache<String, Entry<T>> cache;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private static class Entry<T> {
+        private final T value;
+        private final long time;
+
+        private Entry(@NonNull T value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries, must be positive
+     * @param ttlMillis how long each entry stays valid
+     * @param staleMillis how long an entry can still be served as stale after its time to live
+     */
+    BranchResultCache(int maxEntries, long ttlMillis, long staleMillis) {
+        this.cache = new LruCache<>(maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+    }
+
+    /**
+     * Returns the result for the given key, if any and not expired.
+     * @param key the key
+     * @return a result or null
+     */
+    @Nullable
+    T get(@NonNull String key) {
+        T value = peek(key);
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Like {@link #get(String)}, but does not update the hit and miss counts.
+     * Useful when probing several keys for a single lookup.
+     * @param key the key
+     * @return a result or null
+     */
+    @Nullable
+    T peek(@NonNull String key) {
+        Entry<T> entry = getEntry(key);
+        if (entry == null || SystemClock.elapsedRealtime() - entry.time > ttlMillis) return null;
+        return entry.value;
+    }
+
+    /**
+     * Returns the result for the given key if it expired, but is still within the stale window.
+     * Does not update the hit and miss counts.
+     * @param key the key
+     * @return a stale result or null
+     */
+    @Nullable
+    T getStale(@NonNull String key) {
+        Entry<T> entry = getEntry(key);
+        if (entry == null || SystemClock.elapsedRealtime() - entry.time <= ttlMillis) return null;
+        return entry.value;
+    }
+
+    /**
+     * Returns the result for the given key, no matter how old it is.
+     * Does not update the hit and miss counts.
+     * @param key the key
+     * @return a result or null
+     */
+    @Nullable
+    T getAny(@NonNull String key) {
+        Entry<T> entry = cache.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    @Nullable
+    private Entry<T> getEntry(@NonNull String key) {
+        Entry<T> entry = cache.get(key);
+        if (entry != null && SystemClock.elapsedRealtime() - entry.time > ttlMillis + staleMillis) {
+            // Expired entries are kept until evicted, for getAny().
+            return null;
+        }
+        return entry;
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void put(@NonNull String key, @NonNull T value) {
+        cache.put(key, new Entry<>(value, SystemClock.elapsedRealtime()));
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -0,0 +1,60 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONObject;
+
+/**
+ * Wraps the parser of a request whose stale result was already delivered from the cache.
+ *
+ * The fresh result is delivered to the wrapped parser only if its content differs from the
+ * stale one, according to {@link BranchResponseParser#isSameResult(Object, Object)}.
+ * Errors are dropped, since the caller already has a result to show.
+ *
+ * @param <T> the parsed result type
+ */
+class BranchRevalidationParser<T> extends BranchResponseParser<T> {
+    private final BranchResponseParser<T> parser;
+    private final T staleResult;
+
+    BranchRevalidationParser(@NonNull BranchResponseParser<T> parser, @NonNull T staleResult) {
+        this.parser = parser;
+        this.staleResult = staleResult;
+    }
+
+    @NonNull
+    @Override
+    T parse(@NonNull JSONObject response) {
+        return parser.parse(response);
+    }
+
+    @Nullable
+    @Override
+    BranchStreamingParser<T> getStreamingParser() {
+        return parser.getStreamingParser();
+    }
+
+    @NonNull
+    @Override
+    T adopt(@NonNull T result) {
+        return parser.adopt(result);
+    }
+
+    @Override
+    boolean isSameResult(@NonNull T fresh, @NonNull T stale) {
+        return parser.isSameResult(fresh, stale);
+    }
+
+    @Override
+    void onResult(@NonNull T result) {
+        if (!parser.isSameResult(result, staleResult)) {
+            parser.onResult(result);
+        }
+    }
+
+    @Override
+    void onError(@NonNull BranchSearchError error) {
+        // Keep the stale result.
+    }
+}
@@ -3,10 +3,15 @@ package io.branch.search;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.util.Log;
 
+import java.util.Arrays;
+
 /**
  * Main entry class for Branch Discovery. This class need to be initialized before accessing any Branch
  * discovery functionality.
@@ -15,8 +20,26 @@ import android.util.Log;
  * your app has location permission granted.
  */
 public class BranchSearch {
-    // Each protocol that we handle has to have its own Network channel
-    enum Channel { SEARCH, AUTOSUGGEST, QUERYHINT }
+    /**
+     * Each protocol that we handle has its own network channel.
+     * Requests of the same channel replace each other, while requests of different
+     * channels share the same network pool.
+     */
+    public enum Channel {
+        /** Channel for {@link #query(BranchSearchRequest, IBranchSearchEvents)} requests. */
+        SEARCH(2),
+        /** Channel for {@link #autoSuggest(BranchAutoSuggestRequest, IBranchAutoSuggestEvents)} requests. */
+        AUTOSUGGEST(2),
+        /** Channel for {@link #queryHint(BranchQueryHintRequest, IBranchQueryHintEvents)} requests. */
+        QUERYHINT(1);
+
+        // How many requests of this channel can run at the same time.
+        private final int maxConcurrentRequests;
+
+        Channel(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+    }
 
     private static final String TAG = "BranchSearch";
     private static BranchSearch thisInstance;
@@ -25,8 +48,16 @@ public class BranchSearch {
     URLConnectionNetworkHandler[] networkHandlers
             = new URLConnectionNetworkHandler[Channel.values().length];
 
-    private BranchConfiguration branchConfiguration;
+    // Each request reads this once, so it sees a single configuration even if it's replaced.
+    // A published configuration never changes: it is replaced by a complete copy, and the
+    // lock only keeps two replacements from losing each other's values.
+    private volatile BranchConfiguration branchConfiguration;
+    private final Object configurationLock = new Object();
     private BranchDeviceInfo branchDeviceInfo;
+    private BranchSearchMetrics metrics;
+    private BranchResultCache<BranchSearchResult> searchCache;
+    private BranchAutoSuggestCache autoSuggestCache;
+    private BranchQueryHintStore queryHintStore;
     private Context appContext;
 
     /**
@@ -45,11 +76,15 @@ public class BranchSearch {
      * @return this BranchSearch instance.
      */
     public static BranchSearch init(@NonNull Context context, @NonNull BranchConfiguration config) {
+        // Use our own copy, so that changing the caller's object later has no effect.
+        // The configuration is replaced as a whole through setBranchConfiguration().
+        config = new BranchConfiguration(config);
+        config.sync(context.getApplicationContext());
         thisInstance = new BranchSearch(context, config, new BranchDeviceInfo());
+        BranchHttpClient.install(config.getHttpClient(), context.getApplicationContext().getCacheDir());
 
         // Initialize BranchSearch objects.
         thisInstance.branchDeviceInfo.sync(thisInstance.getApplicationContext());
-        thisInstance.branchConfiguration.sync(thisInstance.getApplicationContext());
 
         // Ensure that there is a valid key
         // TODO dev gave us a bad key. why would we return null here (making getInstance() nullable
@@ -58,6 +93,38 @@ public class BranchSearch {
         if (!config.hasValidKey()) {
             Log.e(TAG, "Invalid Branch Key.");
             thisInstance = null;
+            return null;
+        }
+
+        // Fetch the GAID in background, so that it is ready for the first requests.
+        final BranchSearch search = thisInstance;
+        new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... voids) {
+                search.syncAdTracking();
+                return null;
+            }
+        }.execute();
+
+        if (config.getQueryHintCacheMaxAge() > 0) {
+            thisInstance.queryHintStore = new BranchQueryHintStore(
+                    thisInstance.getApplicationContext(),
+                    config.getQueryHintCacheMaxAge());
+            thisInstance.queryHintStore.preload();
+        }
+        // Index the installed packages, so that parsing results does not need binder calls.
+        BranchPackageIndex.start(thisInstance.getApplicationContext());
+
+        // Check the service status now, so that the result is cached by the time
+        // a request fails with UNAUTHORIZED_ERR.
+        if (config.isServiceEnabledPrefetchEnabled()) {
+            BranchSearchInterface.prefetchServiceEnabled(config.getBranchKey());
+        }
+        if (config.isConnectionWarmUpEnabled()) {
+            BranchConnectionWarmUp.start(BranchHttpClient.getApiClient(), Arrays.asList(
+                    config.getUrl(),
+                    BranchSearchInterface.BRANCH_AUTOSUGGEST_URL,
+                    BranchSearchInterface.BRANCH_QUERYHINT_URL));
         }
         return thisInstance;
     }
@@ -76,10 +143,23 @@ public class BranchSearch {
         this.appContext = context.getApplicationContext();
         this.branchConfiguration = config;
         this.branchDeviceInfo = info;
+        this.metrics = new BranchSearchMetrics(this);
+        if (config.getSearchCacheSize() > 0) {
+            this.searchCache = new BranchResultCache<>(config.getSearchCacheSize(),
+                    config.getSearchCacheTtl(),
+                    config.getStaleWhileRevalidate());
+        }
+        if (config.getAutoSuggestCacheSize() > 0) {
+            this.autoSuggestCache = new BranchAutoSuggestCache(config.getAutoSuggestCacheSize(),
+                    config.getAutoSuggestCacheTtl(),
+                    config.getStaleWhileRevalidate());
+        }
 
         // We need a network handler for each protocol.
         for (Channel channel : Channel.values()) {
-            this.networkHandlers[channel.ordinal()] = URLConnectionNetworkHandler.initialize();
+            this.networkHandlers[channel.ordinal()] = URLConnectionNetworkHandler
+                    .initialize(channel, channel.maxConcurrentRequests,
+                            config.getRequestPolicy(channel));
         }
     }
 
@@ -125,6 +205,22 @@ public class BranchSearch {
         return queryHint(BranchQueryHintRequest.create(), callback);
     }
 
+    /**
+     * Returns the last query hints received from the server, if they were persisted and
+     * are not older than the configured max age. This returns immediately, so it can be used
+     * to show hints while a new {@link #queryHint(BranchQueryHintRequest, IBranchQueryHintEvents)}
+     * request refreshes them. Stored hints are never refreshed in background: only
+     * queryHint requests update them. Right after {@link #init(Context, BranchConfiguration)},
+     * this returns null until the stored hints are loaded from disk.
+     * @see BranchConfiguration#setQueryHintCacheMaxAge(long)
+     * @return the stored hints, or null if there are none
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public BranchQueryHintResult getCachedQueryHints() {
+        return queryHintStore == null ? null : queryHintStore.get(branchConfiguration.getBranchKey(), false);
+    }
+
     /**
      * Retrieve a list of auto-suggestions based on a query parameter.
      * Example:  "piz" might return ["pizza", "pizza near me", "pizza my heart"]
@@ -138,22 +234,110 @@ public class BranchSearch {
         return BranchSearchInterface.autoSuggest(request, callback);
     }
 
+    /**
+     * Returns the SDK metrics, for example the network queue depth of each {@link Channel}.
+     * @return the metrics
+     */
+    @SuppressWarnings("unused")
+    @NonNull
+    public BranchSearchMetrics getMetrics() {
+        return metrics;
+    }
+
     // Package Private
     @NonNull
     URLConnectionNetworkHandler getNetworkHandler(@NonNull Channel channel) {
         return this.networkHandlers[channel.ordinal()];
     }
 
-    // Undocumented
-    // TODO This should not be public! Once the user creates a configuration and initializes
-    //  the SDK, he should not be able to change the configuration values while we're running, or
-    //  our behavior might change/break/be undefined.
+    // Package Private
+    @Nullable
+    BranchResultCache<BranchSearchResult> getSearchCache() {
+        return this.searchCache;
+    }
+
+    // Package Private
+    @Nullable
+    BranchAutoSuggestCache getAutoSuggestCache() {
+        return this.autoSuggestCache;
+    }
+
+    // Package Private
+    @Nullable
+    BranchQueryHintStore getQueryHintStore() {
+        return this.queryHintStore;
+    }
+
+    /**
+     * Returns a copy of the current configuration. Changing it has no effect on this
+     * instance: use {@link #setBranchConfiguration(BranchConfiguration)} instead.
+     * @return a copy of the configuration
+     */
     @SuppressWarnings("WeakerAccess")
     @NonNull
     public final BranchConfiguration getBranchConfiguration() {
+        return new BranchConfiguration(branchConfiguration);
+    }
+
+    // Package Private
+    @NonNull
+    BranchConfiguration getConfiguration() {
         return branchConfiguration;
     }
 
+    /**
+     * Replaces the configuration at runtime. The configuration is copied and then swapped in
+     * at once: each request uses either the old or the new configuration, never a mix of both.
+     * Later changes to the given object have no effect.
+     *
+     * The copy keeps the GAID and limit ad tracking flag of the current configuration until
+     * they are fetched again in background. Other missing values are filled from the manifest
+     * and device values read by {@link #init(Context, BranchConfiguration)}, so this does not
+     * query system services on the caller thread.
+     *
+     * Cache sizes, request policies, the HTTP client and connection warm-up are only read by
+     * {@link #init(Context, BranchConfiguration)} and are not changed by this method.
+     * @param config the new configuration
+     * @return true if the configuration was replaced, false if its Branch key is not valid
+     */
+    @SuppressWarnings({"WeakerAccess", "unused", "UnusedReturnValue"})
+    public boolean setBranchConfiguration(@NonNull BranchConfiguration config) {
+        BranchConfiguration copy = new BranchConfiguration(config);
+        copy.sync(appContext);
+        if (!copy.hasValidKey()) {
+            Log.e(TAG, "Invalid Branch Key.");
+            return false;
+        }
+        synchronized (configurationLock) {
+            copy.copyAdTracking(branchConfiguration);
+            branchConfiguration = copy;
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the GAID and limit ad tracking flag, then publishes them with a copy of the
+     * configuration. This blocks, so it must be called in background.
+     */
+    @WorkerThread
+    void syncAdTracking() {
+        publishAdTracking(branchConfiguration.fetchAdTracking(appContext));
+    }
+
+    /**
+     * Publishes the GAID and limit ad tracking flag of the given configuration with a copy of
+     * the current one, which might have been replaced while they were fetched.
+     * @param fetched a configuration holding the fetched values
+     */
+    @VisibleForTesting
+    void publishAdTracking(@NonNull BranchConfiguration fetched) {
+        synchronized (configurationLock) {
+            BranchConfiguration copy = new BranchConfiguration(branchConfiguration);
+            copy.copyAdTracking(fetched);
+            branchConfiguration = copy;
+        }
+    }
+
     @NonNull
     BranchDeviceInfo getBranchDeviceInfo() {
         return branchDeviceInfo;
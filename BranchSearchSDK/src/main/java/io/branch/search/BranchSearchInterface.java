@@ -1,10 +1,14 @@
 package io.branch.search;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * Class for searching a user query with Branch.
  */
@@ -15,6 +19,14 @@ class BranchSearchInterface {
     static final String BRANCH_AUTOSUGGEST_URL = "https://vulcan.branch.io/v2/autosuggest";
     private static final String BRANCH_SERVICE_ENABLED_URL_PREFIX = "https://vulcan.branch.io/configuration/";
     private static final String BRANCH_SERVICE_ENABLED_URL_SUFFIX = ".json";
+    private static final long SERVICE_ENABLED_TTL_MILLIS = 1000 * 60 * 10; // 10 minutes
+    private static final int SERVICE_ENABLED_MAX_KEYS = 4;
+    // The offline fallback only uses prefixes that are this long, and at least half the query.
+    private static final int MIN_OFFLINE_PREFIX_LENGTH = 3;
+
+    // Successful service enabled results, per Branch key.
+    private static final BranchResultCache<BranchServiceEnabledResult> sServiceEnabledCache
+            = new BranchResultCache<>(SERVICE_ENABLED_MAX_KEYS, SERVICE_ENABLED_TTL_MILLIS, 0);
 
     @VisibleForTesting static URLConnectionNetworkHandler sRawHandler
             = URLConnectionNetworkHandler.initialize();
@@ -26,41 +38,111 @@ class BranchSearchInterface {
             return false;
         }
 
-        final BranchConfiguration configuration = search.getBranchConfiguration();
-        JSONObject jsonPayload = createPayload(request, configuration, search.getBranchDeviceInfo());
-        search.getNetworkHandler(BranchSearch.Channel.SEARCH).executePost(configuration.getUrl(), jsonPayload, new IURLConnectionEvents() {
+        final BranchConfiguration configuration = search.getConfiguration();
+        final BranchPayload jsonPayload = createPayload(request, configuration, search.getBranchDeviceInfo());
+        final BranchResultCache<BranchSearchResult> cache = search.getSearchCache();
+        final int prefetchCount = configuration.getDeepViewPrefetchCount();
+        if (prefetchCount > 0) {
+            // The images of the previous query are not needed anymore.
+            BranchDeepViewFragment.cancelPrefetch(search.getApplicationContext());
+        }
+        final String cacheKey = cache == null ? null : BranchRequestKey.createSearchCacheKey(
+                configuration.getUrl(), jsonPayload);
+        // Search responses are the largest ones, so they are parsed while downloaded.
+        BranchResponseParser<BranchSearchResult> parser = new SearchParser() {
+            @NonNull
+            @Override
+            BranchSearchResult parse(@NonNull JSONObject response) {
+                return onParsed(BranchSearchResult.createFromJson(request, response));
+            }
+
+            @NonNull
+            @Override
+            public BranchSearchResult parse(@NonNull JsonReader reader) throws IOException {
+                return onParsed(BranchSearchResult.createFromJson(request, reader));
+            }
+
+            @NonNull
+            private BranchSearchResult onParsed(@NonNull BranchSearchResult result) {
+                if (cache != null && result.isSuccessful()) cache.put(cacheKey, result);
+                return result;
+            }
+
+            @NonNull
+            @Override
+            BranchSearchResult adopt(@NonNull BranchSearchResult result) {
+                return result.withRequest(request);
+            }
+
+            @Override
+            boolean isSameResult(@NonNull BranchSearchResult fresh, @NonNull BranchSearchResult stale) {
+                return fresh.hasSameContent(stale);
+            }
+
             @Override
-            public void onResult(final @NonNull JSONObject response) {
+            void onResult(@NonNull BranchSearchResult result) {
+                if (prefetchCount > 0) {
+                    BranchDeepViewFragment.prefetchImages(search.getApplicationContext(),
+                            result, prefetchCount);
+                }
                 if (callback != null) {
-                    boolean isError = response instanceof BranchSearchError;
-                    if (isError && ((BranchSearchError) response).getErrorCode()
-                            == BranchSearchError.ERR_CODE.UNAUTHORIZED_ERR) {
+                    callback.onBranchSearchResult(result);
+                }
+            }
+
+            @Override
+            void onError(final @NonNull BranchSearchError error) {
+                if (callback != null) {
+                    BranchSearchResult offline = null;
+                    if (cache != null && configuration.isOfflineFallbackEnabled()) {
+                        offline = getOfflineResult(cache, configuration.getUrl(), jsonPayload, error);
+                    }
+                    if (offline != null) {
+                        callback.onBranchSearchResult(offline.fromCache(request, true));
+                    } else if (error.getErrorCode() == BranchSearchError.ERR_CODE.UNAUTHORIZED_ERR) {
                         // Check if the service is enabled. If it is, we'll return the original
                         // UNAUTHORIZED_ERR error. If it's not, we'll return SERVICE_DISABLED_ERR.
                         serviceEnabled(configuration.getBranchKey(), new IBranchServiceEnabledEvents() {
                             @Override
                             public void onBranchServiceEnabledResult(@NonNull BranchServiceEnabledResult result) {
                                 if (result.isEnabled()) {
-                                    callback.onBranchSearchError((BranchSearchError) response);
+                                    callback.onBranchSearchError(error);
                                 } else {
                                     BranchSearchError.ERR_CODE code = BranchSearchError.ERR_CODE.SERVICE_DISABLED_ERR;
                                     callback.onBranchSearchError(new BranchSearchError(code));
                                 }
                             }
                         });
-                    } else if (isError) {
-                        callback.onBranchSearchError((BranchSearchError) response);
                     } else {
-                        callback.onBranchSearchResult(BranchSearchResult.createFromJson(request, response));
+                        callback.onBranchSearchError(error);
                     }
                 }
             }
+        };
 
-        });
-
+        URLConnectionNetworkHandler handler = search.getNetworkHandler(BranchSearch.Channel.SEARCH);
+        BranchSearchResult cached = cache == null ? null : cache.get(cacheKey);
+        BranchSearchResult stale = cache == null || cached != null ? null : cache.getStale(cacheKey);
+        if (cached != null) {
+            handler.deliverPost(cached.fromCache(request, false), parser);
+        } else if (stale != null) {
+            // Stale while revalidate: show the old result now, and the new one only if different.
+            BranchSearchResult staleResult = stale.fromCache(request, true);
+            handler.deliverPost(staleResult, parser);
+            handler.executePost(configuration.getUrl(), jsonPayload,
+                    new BranchRevalidationParser<>(parser, staleResult));
+        } else {
+            handler.executePost(configuration.getUrl(), jsonPayload, parser);
+        }
         return true;
     }
 
+    /**
+     * The parser of search requests, which can also stream.
+     */
+    private abstract static class SearchParser extends BranchResponseParser<BranchSearchResult>
+            implements BranchStreamingParser<BranchSearchResult> {}
+
     static boolean autoSuggest(final BranchAutoSuggestRequest request,
                                final IBranchAutoSuggestEvents callback) {
         BranchSearch search = BranchSearch.getInstance();
@@ -68,23 +150,51 @@ class BranchSearchInterface {
             return false;
         }
 
-        JSONObject jsonPayload = createPayload(request,
-                search.getBranchConfiguration(),
+        final BranchPayload jsonPayload = createPayload(request,
+                search.getConfiguration(),
                 search.getBranchDeviceInfo());
-        search.getNetworkHandler(BranchSearch.Channel.AUTOSUGGEST).executePost(BRANCH_AUTOSUGGEST_URL, jsonPayload, new IURLConnectionEvents() {
+        final BranchAutoSuggestCache cache = search.getAutoSuggestCache();
+        BranchResponseParser<BranchAutoSuggestResult> parser = new BranchResponseParser<BranchAutoSuggestResult>() {
+            @NonNull
             @Override
-            public void onResult(@NonNull JSONObject response) {
+            BranchAutoSuggestResult parse(@NonNull JSONObject response) {
+                BranchAutoSuggestResult result = BranchAutoSuggestResult.createFromJson(response);
+                if (cache != null) cache.put(jsonPayload, result);
+                return result;
+            }
+
+            @Override
+            boolean isSameResult(@NonNull BranchAutoSuggestResult fresh, @NonNull BranchAutoSuggestResult stale) {
+                return fresh.hasSameContent(stale);
+            }
+
+            @Override
+            void onResult(@NonNull BranchAutoSuggestResult result) {
                 if (callback != null) {
-                    if (response instanceof BranchSearchError) {
-                        callback.onBranchAutoSuggestError((BranchSearchError) response);
-                    } else {
-                        callback.onBranchAutoSuggestResult(BranchAutoSuggestResult.createFromJson(response));
-                    }
+                    callback.onBranchAutoSuggestResult(result);
                 }
             }
 
-        });
+            @Override
+            void onError(@NonNull BranchSearchError error) {
+                if (callback != null) {
+                    callback.onBranchAutoSuggestError(error);
+                }
+            }
+        };
 
+        URLConnectionNetworkHandler handler = search.getNetworkHandler(BranchSearch.Channel.AUTOSUGGEST);
+        BranchAutoSuggestResult cached = cache == null ? null : cache.get(jsonPayload);
+        BranchAutoSuggestResult stale = cache == null || cached != null ? null : cache.getStale(jsonPayload);
+        if (cached != null) {
+            handler.deliverPost(cached, parser);
+        } else if (stale != null) {
+            handler.deliverPost(stale, parser);
+            handler.executePost(BRANCH_AUTOSUGGEST_URL, jsonPayload,
+                    new BranchRevalidationParser<>(parser, stale));
+        } else {
+            handler.executePost(BRANCH_AUTOSUGGEST_URL, jsonPayload, parser);
+        }
         return true;
     }
 
@@ -96,53 +206,148 @@ class BranchSearchInterface {
             return false;
         }
 
-        JSONObject jsonPayload = createPayload(request,
-                search.getBranchConfiguration(),
+        BranchConfiguration configuration = search.getConfiguration();
+        BranchPayload jsonPayload = createPayload(request,
+                configuration,
                 search.getBranchDeviceInfo());
-        search.getNetworkHandler(BranchSearch.Channel.QUERYHINT).executePost(BRANCH_QUERYHINT_URL, jsonPayload, new IURLConnectionEvents() {
+        final BranchQueryHintStore store = search.getQueryHintStore();
+        final String branchKey = configuration.getBranchKey();
+        BranchResponseParser<BranchQueryHintResult> parser = new BranchResponseParser<BranchQueryHintResult>() {
+            @NonNull
+            @Override
+            BranchQueryHintResult parse(@NonNull JSONObject response) {
+                BranchQueryHintResult result = BranchQueryHintResult.createFromJson(response);
+                if (store != null && !result.getHints().isEmpty()) store.save(branchKey, result);
+                return result;
+            }
+
             @Override
-            public void onResult(@NonNull JSONObject response) {
+            boolean isSameResult(@NonNull BranchQueryHintResult fresh, @NonNull BranchQueryHintResult stale) {
+                return fresh.hasSameContent(stale);
+            }
+
+            @Override
+            void onResult(@NonNull BranchQueryHintResult result) {
                 if (callback != null) {
-                    if (response instanceof BranchSearchError) {
-                        callback.onBranchQueryHintError((BranchSearchError) response);
-                    } else {
-                        callback.onBranchQueryHintResult(BranchQueryHintResult.createFromJson(response));
-                    }
+                    callback.onBranchQueryHintResult(result);
                 }
             }
 
-        });
+            @Override
+            void onError(@NonNull BranchSearchError error) {
+                if (callback != null) {
+                    callback.onBranchQueryHintError(error);
+                }
+            }
+        };
 
+        URLConnectionNetworkHandler handler = search.getNetworkHandler(BranchSearch.Channel.QUERYHINT);
+        BranchQueryHintResult stale = null;
+        if (store != null && configuration.getStaleWhileRevalidate() > 0) {
+            // Stored hints are always revalidated, since they might come from a previous run.
+            stale = store.get(branchKey, true);
+        }
+        if (stale != null) {
+            handler.deliverPost(stale, parser);
+            handler.executePost(BRANCH_QUERYHINT_URL, jsonPayload,
+                    new BranchRevalidationParser<>(parser, stale));
+        } else {
+            handler.executePost(BRANCH_QUERYHINT_URL, jsonPayload, parser);
+        }
         return true;
     }
 
-    static void serviceEnabled(@NonNull String branchKey,
+    static void serviceEnabled(@NonNull final String branchKey,
                                final @NonNull IBranchServiceEnabledEvents callback) {
         // This can be called before initialization, so don't try to get the BranchSearch instance.
         // Also, we don't have a dedicated network channel, so use the raw handler.
         String url = BRANCH_SERVICE_ENABLED_URL_PREFIX + branchKey + BRANCH_SERVICE_ENABLED_URL_SUFFIX;
-        sRawHandler.executeGet(url, new IURLConnectionEvents() {
-            @Override
-            public void onResult(@NonNull JSONObject response) {
-                BranchServiceEnabledResult result;
-                if (response instanceof BranchSearchError) {
-                    result = BranchServiceEnabledResult.createFromError((BranchSearchError) response);
-                } else {
-                    result = BranchServiceEnabledResult.createFromJson(response);
-                }
-                // We do not have an error callback, see BranchServiceEnabledResult.createFromError
+        BranchResponseParser<BranchServiceEnabledResult> parser = new BranchResponseParser<BranchServiceEnabledResult>() {
+            @NonNull
+            @Override
+            BranchServiceEnabledResult parse(@NonNull JSONObject response) {
+                BranchServiceEnabledResult result = BranchServiceEnabledResult.createFromJson(response);
+                // Errors are not cached, see createFromError.
+                sServiceEnabledCache.put(branchKey, result);
+                return result;
+            }
+
+            @Override
+            void onResult(@NonNull BranchServiceEnabledResult result) {
                 callback.onBranchServiceEnabledResult(result);
             }
+
+            @Override
+            void onError(@NonNull BranchSearchError error) {
+                // We do not have an error callback, see BranchServiceEnabledResult.createFromError
+                callback.onBranchServiceEnabledResult(BranchServiceEnabledResult.createFromError(error));
+            }
+        };
+
+        BranchServiceEnabledResult cached = sServiceEnabledCache.get(branchKey);
+        if (cached != null) {
+            sRawHandler.deliverGet(cached, parser);
+        } else {
+            sRawHandler.executeGet(url, parser);
+        }
+    }
+
+    /**
+     * Fetches the service enabled result for the given key, if not cached already,
+     * so that {@link #serviceEnabled(String, IBranchServiceEnabledEvents)} can answer right away.
+     * @param branchKey the branch key
+     */
+    static void prefetchServiceEnabled(@NonNull String branchKey) {
+        if (sServiceEnabledCache.get(branchKey) != null) return;
+        serviceEnabled(branchKey, new IBranchServiceEnabledEvents() {
+            @Override
+            public void onBranchServiceEnabledResult(@NonNull BranchServiceEnabledResult result) {
+                // Nothing to do, the result is cached.
+            }
         });
     }
 
+    /**
+     * Looks for a cached result to deliver instead of a connectivity error: first for the
+     * same query, then for its longest cached prefix. Prefixes that are too short, like "p" for
+     * "pizza", are not used: their results would be about something else.
+     * @param cache the search cache
+     * @param url the url the request was sent to
+     * @param payload the request payload
+     * @param error the error
+     * @return a cached result, or null if the error is not a connectivity error or nothing is cached
+     */
+    @VisibleForTesting
+    @Nullable
+    static BranchSearchResult getOfflineResult(@NonNull BranchResultCache<BranchSearchResult> cache,
+                                               @NonNull String url,
+                                               @NonNull BranchPayload payload,
+                                               @NonNull BranchSearchError error) {
+        BranchSearchError.ERR_CODE code = error.getErrorCode();
+        if (code != BranchSearchError.ERR_CODE.BRANCH_NO_CONNECTIVITY_ERR
+                && code != BranchSearchError.ERR_CODE.REQUEST_TIMED_OUT_ERR) {
+            return null;
+        }
+        String query = BranchRequestKey.normalizeQuery(
+                payload.getValues().optString(BranchSearchRequest.KEY_USER_QUERY));
+        int minLength = Math.min(query.length(),
+                Math.max(MIN_OFFLINE_PREFIX_LENGTH, (query.length() + 1) / 2));
+        for (int length = query.length(); length > 0 && length >= minLength; length--) {
+            String key = BranchRequestKey.createSearchCacheKey(url, payload,
+                    query.substring(0, length));
+            BranchSearchResult result = cache.getAny(key);
+            if (result != null) return result;
+        }
+        return null;
+    }
+
     @NonNull
-    static JSONObject createPayload(@NonNull BranchDiscoveryRequest request,
-                                    @NonNull BranchConfiguration configuration,
-                                    @NonNull BranchDeviceInfo info) {
-        JSONObject jsonPayload = request.toJson();
-        info.addDeviceInfo(jsonPayload);
-        configuration.addConfigurationInfo(jsonPayload);
-        return jsonPayload;
+    static BranchPayload createPayload(@NonNull BranchDiscoveryRequest request,
+                                       @NonNull BranchConfiguration configuration,
+                                       @NonNull BranchDeviceInfo info) {
+        JSONObject values = request.toJson();
+        info.addLocationInfo(values);
+        configuration.addRequestExtraInfo(values);
+        return new BranchPayload(values, BranchPayloadTemplate.get(info, configuration));
     }
 }
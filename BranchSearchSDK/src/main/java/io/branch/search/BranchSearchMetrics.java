@@ -0,0 +1,183 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import okhttp3.Dispatcher;
+
+/**
+ * Read-only view of the SDK internal state, useful for monitoring how the SDK behaves under load.
+ * Values are read live, so each call returns the current value.
+ *
+ * Can be retrieved through {@link BranchSearch#getMetrics()}.
+ */
+public class BranchSearchMetrics {
+
+    /**
+     * Outcome of the connection warm up.
+     * @see BranchConfiguration#setConnectionWarmUpEnabled(boolean)
+     */
+    public enum WarmUpResult {
+        /** Warm up was not enabled. */
+        DISABLED,
+        /** Warm up was started, but no request has completed yet. */
+        PENDING,
+        /** The first request reused a warmed up connection. */
+        REUSED,
+        /** The first request had to open a new connection, for example because it was
+         * started before the warm up could complete. */
+        NOT_REUSED
+    }
+
+    /**
+     * HTTP method of a request.
+     */
+    public enum Method { GET, POST }
+
+    /**
+     * Phase of a request, used to break down its latency.
+     */
+    public enum Phase {
+        /** DNS resolution. Only recorded when a new connection was opened. */
+        DNS,
+        /** Connection setup, including TLS. Only recorded when a new connection was opened. */
+        CONNECT,
+        /** TLS handshake. Only recorded when a new connection was opened. */
+        TLS,
+        /** Time to first byte: from sending the request to receiving the response headers. */
+        TTFB,
+        /** Reading the response body. */
+        BODY,
+        /** The whole request. */
+        TOTAL
+    }
+
+    private final BranchSearch search;
+
+    BranchSearchMetrics(@NonNull BranchSearch search) {
+        this.search = search;
+    }
+
+    /**
+     * Returns the number of requests of the given channel that are currently executing.
+     * This includes canceled requests that are still releasing their network resources.
+     * @param channel a channel
+     * @return the number of running requests
+     */
+    @SuppressWarnings("WeakerAccess")
+    public int getRunningRequestCount(@NonNull BranchSearch.Channel channel) {
+        return search.getNetworkHandler(channel).getRunningCount();
+    }
+
+    /**
+     * Returns the number of requests of the given channel that are waiting because the
+     * channel has reached its concurrency limit.
+     * @param channel a channel
+     * @return the queue depth
+     */
+    @SuppressWarnings("WeakerAccess")
+    public int getQueueDepth(@NonNull BranchSearch.Channel channel) {
+        return search.getNetworkHandler(channel).getQueueDepth();
+    }
+
+    /**
+     * Returns the number of requests that were accepted by a channel but are waiting for a
+     * thread of the shared network pool.
+     * @return the queue depth of the shared network pool
+     */
+    @SuppressWarnings("WeakerAccess")
+    public int getSharedQueueDepth() {
+        return getDispatcher().queuedCallsCount();
+    }
+
+    /**
+     * Returns the number of threads of the shared network pool that are currently busy.
+     * @return the number of active threads
+     */
+    @SuppressWarnings("WeakerAccess")
+    public int getActiveThreadCount() {
+        ExecutorService executor = getDispatcher().executorService();
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        return getDispatcher().runningCallsCount();
+    }
+
+    /**
+     * Returns whether the first request after initialization could reuse a connection
+     * opened by the connection warm up.
+     * @return the warm up result
+     */
+    @SuppressWarnings("WeakerAccess")
+    @NonNull
+    public WarmUpResult getWarmUpResult() {
+        return BranchConnectionWarmUp.getResult();
+    }
+
+    /**
+     * Returns how many searches were served by the search cache.
+     * @see BranchConfiguration#setSearchCacheSize(int)
+     * @return the hit count, or 0 if the cache is disabled
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getSearchCacheHitCount() {
+        BranchResultCache<BranchSearchResult> cache = search.getSearchCache();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Returns how many searches were not found in the search cache and went to the network.
+     * @see BranchConfiguration#setSearchCacheSize(int)
+     * @return the miss count, or 0 if the cache is disabled
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getSearchCacheMissCount() {
+        BranchResultCache<BranchSearchResult> cache = search.getSearchCache();
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    /**
+     * Returns how many auto suggest requests were served by the auto suggest cache,
+     * either from the same query or from one of its prefixes.
+     * @see BranchConfiguration#setAutoSuggestCacheSize(int)
+     * @return the hit count, or 0 if the cache is disabled
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getAutoSuggestCacheHitCount() {
+        BranchAutoSuggestCache cache = search.getAutoSuggestCache();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Returns how many auto suggest requests could not be served by the auto suggest cache.
+     * @see BranchConfiguration#setAutoSuggestCacheSize(int)
+     * @return the miss count, or 0 if the cache is disabled
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getAutoSuggestCacheMissCount() {
+        BranchAutoSuggestCache cache = search.getAutoSuggestCache();
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    /**
+     * Returns latency percentiles of the most recent successful requests of the given kind.
+     * @param channel the channel
+     * @param method the HTTP method
+     * @param phase the request phase
+     * @return latency percentiles
+     */
+    @SuppressWarnings("WeakerAccess")
+    @NonNull
+    public BranchLatencyStats getLatency(@NonNull BranchSearch.Channel channel,
+                                         @NonNull Method method,
+                                         @NonNull Phase phase) {
+        return BranchLatencyRecorder.getStats(channel, method, phase);
+    }
+
+    @NonNull
+    private static Dispatcher getDispatcher() {
+        return BranchHttpClient.getDispatcher();
+    }
+}
@@ -2,10 +2,13 @@ package io.branch.search;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,13 +25,22 @@ public class BranchSearchResult {
     private final BranchSearchRequest query;
     private final String correctedQuery;
     private final List<BranchAppResult> results;
+    private final boolean successful;
+    private final boolean fromCache;
+    private final boolean stale;
 
     private BranchSearchResult(@NonNull BranchSearchRequest query,
                                @Nullable String correctedQuery,
-                               @NonNull List<BranchAppResult> results) {
+                               @NonNull List<BranchAppResult> results,
+                               boolean successful,
+                               boolean fromCache,
+                               boolean stale) {
         this.query = query;
         this.correctedQuery = correctedQuery;
         this.results = results;
+        this.successful = successful;
+        this.fromCache = fromCache;
+        this.stale = stale;
     }
 
     /**
@@ -53,6 +65,86 @@ public class BranchSearchResult {
         return this.results;
     }
 
+    /**
+     * @return true if this result was served from the SDK cache instead of the network.
+     * @see BranchConfiguration#setSearchCacheSize(int)
+     */
+    @SuppressWarnings("unused")
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * @return true if this result came from the cache after its time to live. Fresh results
+     * are requested in background and delivered again, only if they differ. Results of the
+     * offline fallback are always stale, and are not refreshed.
+     * @see BranchConfiguration#setStaleWhileRevalidate(long)
+     */
+    @SuppressWarnings("unused")
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return whether the server reported success. Unsuccessful results have no apps
+     * and are not cached
+     */
+    boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Compares the parsed content of two results: corrected query, apps and links.
+     * Request objects and scores are ignored.
+     * @param other another result
+     * @return true if both results would be displayed the same way
+     */
+    boolean hasSameContent(@NonNull BranchSearchResult other) {
+        return getSignature().equals(other.getSignature());
+    }
+
+    @NonNull
+    private String getSignature() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(correctedQuery);
+        for (BranchAppResult app : results) {
+            builder.append('\n').append(app.getPackageName())
+                    .append('|').append(app.getAppName())
+                    .append('|').append(app.getAppIconUrl());
+            for (BranchLinkResult link : app.getDeepLinks()) {
+                builder.append('\n').append(link.getEntityID())
+                        .append('|').append(link.getName())
+                        .append('|').append(link.getDescription())
+                        .append('|').append(link.getImageUrl());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a copy of this result for another, identical request.
+     * @param query the request
+     * @return a result
+     */
+    @NonNull
+    BranchSearchResult withRequest(@NonNull BranchSearchRequest query) {
+        if (query == this.query) return this;
+        return new BranchSearchResult(query, correctedQuery, new ArrayList<>(results),
+                successful, fromCache, stale);
+    }
+
+    /**
+     * Returns a copy of this cached result for a new request.
+     * @param query the request
+     * @param stale whether the cached result expired
+     * @return a result
+     */
+    @NonNull
+    BranchSearchResult fromCache(@NonNull BranchSearchRequest query, boolean stale) {
+        return new BranchSearchResult(query, correctedQuery, new ArrayList<>(results),
+                successful, true, stale);
+    }
+
     /**
      * Parses a {@link BranchSearchResult} from JSON object.
      * @param query original query
@@ -67,7 +159,8 @@ public class BranchSearchResult {
             correctedQuery = json.optString(KEY_CORRECTED_QUERY);
         }
         List<BranchAppResult> results = new ArrayList<>();
-        if (json.optBoolean(KEY_SUCCESS)) {
+        boolean success = json.optBoolean(KEY_SUCCESS);
+        if (success) {
             JSONArray resultsJson = json.optJSONArray(KEY_RESULTS);
             if (resultsJson != null) {
                 for (int i = 0; i < resultsJson.length(); i++) {
@@ -80,6 +173,78 @@ public class BranchSearchResult {
                 }
             }
         }
-        return new BranchSearchResult(query, correctedQuery, results);
+        return new BranchSearchResult(query, correctedQuery, results, success, false, false);
+    }
+
+    /**
+     * Parses a {@link BranchSearchResult} while the response is read, without building JSON
+     * objects for the apps and links. The result is the same as the one of
+     * {@link #createFromJson(BranchSearchRequest, JSONObject)} for the same response.
+     *
+     * Results are skipped if the response was already reported as unsuccessful. Otherwise
+     * their links are only checked against the installed apps and shortcuts, which can make
+     * binder calls, after the whole response was read and turned out to be successful.
+     * @param query original query
+     * @param reader a reader positioned at the start of the response
+     * @return a result
+     * @throws IOException if reading fails
+     */
+    @NonNull
+    static BranchSearchResult createFromJson(@NonNull BranchSearchRequest query,
+                                             @NonNull JsonReader reader) throws IOException {
+        String correctedQuery = null;
+        boolean success = false;
+        boolean successRead = false;
+        List<BranchAppResult.Unfiltered> apps = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(KEY_CORRECTED_QUERY)) {
+                // Like optString(), which turns null into "null".
+                correctedQuery = String.valueOf(Util.readJsonValue(reader));
+            } else if (name.equals(KEY_SUCCESS) && reader.peek() == JsonToken.BOOLEAN) {
+                success = reader.nextBoolean();
+                successRead = true;
+            } else if (name.equals(KEY_SUCCESS) && reader.peek() == JsonToken.STRING) {
+                success = "true".equalsIgnoreCase(reader.nextString());
+                successRead = true;
+            } else if (name.equals(KEY_RESULTS) && reader.peek() == JsonToken.BEGIN_ARRAY
+                    && (success || !successRead)) {
+                apps = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        apps.add(BranchAppResult.createFromJson(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        List<BranchAppResult> results = new ArrayList<>();
+        if (success && apps != null) {
+            for (BranchAppResult.Unfiltered app : apps) {
+                BranchAppResult result = app.filter();
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        }
+        return new BranchSearchResult(query, correctedQuery, results, success, false, false);
+    }
+
+    /**
+     * Creates a result with no apps, like the one of an unsuccessful response.
+     * @param query original query
+     * @return a result
+     */
+    @NonNull
+    static BranchSearchResult createEmpty(@NonNull BranchSearchRequest query) {
+        return new BranchSearchResult(query, null, new ArrayList<BranchAppResult>(),
+                false, false, false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package io.branch.search;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.LauncherApps;
+import android.content.pm.ShortcutInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * A {@link LauncherApps.Callback} that reduces all package and shortcut changes to a single
+ * {@link #onInvalidate(String)} call, for classes that cache shortcut information per package.
+ */
+@TargetApi(25)
+abstract class BranchShortcutCallback extends LauncherApps.Callback {
+
+    /**
+     * Called on the main thread when the shortcuts of a package may have changed.
+     * @param packageName the package
+     */
+    abstract void onInvalidate(@NonNull String packageName);
+
+    /**
+     * Registers this callback.
+     * @param context a context
+     * @return true if registered, false if callbacks can not be received
+     */
+    boolean register(@NonNull Context context) {
+        try {
+            LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+            //noinspection ConstantConditions
+            launcherApps.registerCallback(this, new Handler(Looper.getMainLooper()));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void onPackageRemoved(String packageName, UserHandle user) {
+        onInvalidate(packageName);
+    }
+
+    @Override
+    public void onPackageAdded(String packageName, UserHandle user) {
+        onInvalidate(packageName);
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, UserHandle user) {
+        onInvalidate(packageName);
+    }
+
+    @Override
+    public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) {
+        for (String packageName : packageNames) {
+            onInvalidate(packageName);
+        }
+    }
+
+    @Override
+    public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) {
+        for (String packageName : packageNames) {
+            onInvalidate(packageName);
+        }
+    }
+
+    @Override
+    public void onShortcutsChanged(@NonNull String packageName,
+                                   @NonNull List<ShortcutInfo> shortcuts,
+                                   @NonNull UserHandle user) {
+        onInvalidate(packageName);
+    }
+}
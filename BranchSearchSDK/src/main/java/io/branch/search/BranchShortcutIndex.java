@@ -0,0 +1,110 @@
+package io.branch.search;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.LauncherApps;
+import android.content.pm.ShortcutInfo;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the enabled shortcut ids of each package, used by
+ * {@link IBranchShortcutHandler#DEFAULT}.
+ *
+ * A response can contain many shortcut links for the same package. Instead of querying
+ * {@link LauncherApps} for each of them, we query once per package and keep the enabled ids
+ * in a set. Packages are loaded lazily and dropped when their shortcuts change.
+ */
+@TargetApi(25)
+class BranchShortcutIndex {
+    private static BranchShortcutIndex sInstance;
+
+    private final Object lock = new Object();
+    private final Context context;
+    private final boolean listening;
+
+    // Guarded by lock
+    private final Map<String, Set<String>> enabledIds = new HashMap<>();
+    // Incremented on each change, so that a query that was running during a change is not stored.
+    private long generation;
+
+    private BranchShortcutIndex(@NonNull Context context) {
+        this.context = context;
+        this.listening = new BranchShortcutCallback() {
+            @Override
+            void onInvalidate(@NonNull String packageName) {
+                synchronized (lock) {
+                    enabledIds.remove(packageName);
+                    generation++;
+                }
+            }
+        }.register(context);
+    }
+
+    @NonNull
+    static synchronized BranchShortcutIndex getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new BranchShortcutIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Whether the given shortcut exists and is enabled.
+     * @param id shortcut id
+     * @param packageName package name
+     * @return true if enabled
+     */
+    @WorkerThread
+    boolean isEnabled(@NonNull String id, @NonNull String packageName) {
+        long queryGeneration;
+        synchronized (lock) {
+            Set<String> ids = enabledIds.get(packageName);
+            if (ids != null) return ids.contains(id);
+            queryGeneration = generation;
+        }
+        Set<String> ids = query(packageName);
+        if (ids == null) return false;
+        // Without callbacks, we would never know when to drop the set, so don't store it.
+        if (listening) {
+            synchronized (lock) {
+                if (queryGeneration == generation) {
+                    enabledIds.put(packageName, ids);
+                }
+            }
+        }
+        return ids.contains(id);
+    }
+
+    @Nullable
+    private Set<String> query(@NonNull String packageName) {
+        LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+        try {
+            LauncherApps.ShortcutQuery query = new LauncherApps.ShortcutQuery();
+            query.setQueryFlags(LauncherApps.ShortcutQuery.FLAG_MATCH_DYNAMIC
+                    | LauncherApps.ShortcutQuery.FLAG_MATCH_MANIFEST
+                    | LauncherApps.ShortcutQuery.FLAG_MATCH_PINNED);
+            query.setPackage(packageName);
+            //noinspection ConstantConditions
+            List<ShortcutInfo> shortcuts = launcherApps.getShortcuts(query, Process.myUserHandle());
+            Set<String> ids = new HashSet<>();
+            if (shortcuts != null) {
+                for (ShortcutInfo shortcut : shortcuts) {
+                    if (shortcut.isEnabled()) ids.add(shortcut.getId());
+                }
+            }
+            return ids;
+        } catch (Exception e) {
+            // Not a launcher, not installed, invalid, ....
+            return null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Implemented by a {@link BranchResponseParser} that can parse successful responses while they
+ * are downloaded, instead of reading them into a string and a {@link org.json.JSONObject} first.
+ * This is worth it for large responses only.
+ *
+ * The result must be the same as the one of {@link BranchResponseParser#parse(org.json.JSONObject)}
+ * for the same response.
+ *
+ * @param <T> the parsed result type
+ */
+interface BranchStreamingParser<T> {
+
+    /**
+     * Parses a successful response while reading it. Called on a worker thread.
+     * @param reader a reader positioned at the start of the response
+     * @return the parsed result
+     * @throws IOException if the response could not be read
+     */
+    @WorkerThread
+    @NonNull
+    T parse(@NonNull JsonReader reader) throws IOException;
+}
@@ -1,9 +1,17 @@
 package io.branch.search;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
+import android.util.Base64InputStream;
+import android.util.Base64OutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -23,6 +31,15 @@ class Branchcryption {
     private static final String algorithm = "AES";
     private static final String key = "";
 
+    /**
+     * Whether requests can be encrypted, that is, whether the key is a valid AES key.
+     * This is cheap, so it can be checked before building a request.
+     */
+    static boolean isAvailable() {
+        int length = key.length();
+        return keyId.length() > 0 && (length == 16 || length == 24 || length == 32);
+    }
+
     public static String encrypt(@NonNull String textToEncrypt, @NonNull String iv) throws Exception {
         SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(utf8), algorithm);
         Cipher cipher = Cipher.getInstance(encryptionCipher);
@@ -40,4 +57,34 @@ class Branchcryption {
         return new String(decrypted, utf8);
     }
 
-}
\ No newline at end of file
+    /**
+     * Like {@link #decrypt(String, String)}, but decodes and decrypts while the returned stream
+     * is read, without holding the decrypted text in memory.
+     */
+    public static InputStream decrypt(@NonNull InputStream base64Stream, @NonNull String iv) throws Exception {
+        SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(utf8), algorithm);
+        Cipher cipher = Cipher.getInstance(decryptionCipher);
+        cipher.init(Cipher.DECRYPT_MODE, skeySpec, new IvParameterSpec(iv.getBytes(utf8)));
+        return new CipherInputStream(new Base64InputStream(base64Stream, Base64.DEFAULT), cipher);
+    }
+
+    /**
+     * Like {@link #encrypt(String, String)}, but encrypts and encodes while the returned stream
+     * is written, without holding the cipher text in memory. Closing the stream writes the
+     * last block and closes the given one.
+     */
+    public static OutputStream encrypt(@NonNull OutputStream base64Stream, @NonNull String iv) throws Exception {
+        return encrypt(base64Stream, key, iv);
+    }
+
+    @VisibleForTesting
+    static OutputStream encrypt(@NonNull OutputStream base64Stream,
+                                @NonNull String key,
+                                @NonNull String iv) throws Exception {
+        SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(utf8), algorithm);
+        Cipher cipher = Cipher.getInstance(encryptionCipher);
+        cipher.init(Cipher.ENCRYPT_MODE, skeySpec, new IvParameterSpec(iv.getBytes(utf8)));
+        return new CipherOutputStream(new Base64OutputStream(base64Stream, Base64.DEFAULT), cipher);
+    }
+
+}
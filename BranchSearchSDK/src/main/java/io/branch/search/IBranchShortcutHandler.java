@@ -2,19 +2,10 @@ package io.branch.search;
 
 import android.content.Context;
 import android.content.pm.LauncherApps;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.ShortcutInfo;
 import android.os.Build;
 import android.os.Process;
 import android.support.annotation.NonNull;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
 /**
  * Handles Android's shortcut validation and launch.
  */
@@ -39,7 +30,8 @@ public interface IBranchShortcutHandler {
     boolean launchShortcut(@NonNull Context context, @NonNull String id, @NonNull String packageName);
 
     /**
-     * The default shortcut handler.
+     * The default shortcut handler. Shortcuts are looked up once per package
+     * and cached until the package shortcuts change.
      */
     IBranchShortcutHandler DEFAULT = new IBranchShortcutHandler() {
         @Override
@@ -47,26 +39,7 @@ public interface IBranchShortcutHandler {
                                         @NonNull String id,
                                         @NonNull String packageName) {
             if (Build.VERSION.SDK_INT < 25) return false;
-            LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
-            try {
-                LauncherApps.ShortcutQuery query = new LauncherApps.ShortcutQuery();
-                query.setQueryFlags(LauncherApps.ShortcutQuery.FLAG_MATCH_DYNAMIC
-                        | LauncherApps.ShortcutQuery.FLAG_MATCH_MANIFEST
-                        | LauncherApps.ShortcutQuery.FLAG_MATCH_PINNED);
-                query.setPackage(packageName);
-                //noinspection ConstantConditions
-                List<ShortcutInfo> shortcuts = launcherApps.getShortcuts(query, Process.myUserHandle());
-                if (shortcuts != null) {
-                    for (ShortcutInfo shortcut : shortcuts) {
-                        if (shortcut.isEnabled() && shortcut.getId().equals(id)) {
-                            return true;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                // Not a launcher, not installed, invalid, ....
-            }
-            return false;
+            return BranchShortcutIndex.getInstance(context).isEnabled(id, packageName);
         }
 
         @Override
@@ -6,7 +6,10 @@ import org.json.JSONObject;
 
 /**
  * URLConnection Event Interface.
+ * @deprecated the SDK does not use this interface anymore. Responses are now parsed
+ * on a worker thread before being delivered through the public callbacks.
  */
+@Deprecated
 public interface IURLConnectionEvents {
     void onResult(@NonNull JSONObject response);
-}
\ No newline at end of file
+}
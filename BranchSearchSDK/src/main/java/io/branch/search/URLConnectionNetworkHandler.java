@@ -1,81 +1,281 @@
 package io.branch.search;
 
+import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
 
 /**
  * URLConnection Network Handler.
  *
- * This class uses a {@link BranchExecutor} to schedule (through Android AsyncTasks) network
- * requests.
+ * This class schedules network requests through {@link URLConnectionTask}, which enqueues them
+ * on the OkHttp dispatcher shared by all handlers. Nothing here blocks, so it's safe to call
+ * from the UI thread.
  *
  * As new requests are coming, the policy in this class is to schedule the new request, and then
- * cancel any pending request for the same type. Canceling pending requests is:
+ * cancel any pending request for the same type. Canceling pending requests is important - if we
+ * don't, we allow multiple requests of the same type, and this means we can't guarantee that the
+ * result callback is called in the correct order and this can cause UI issues.
  *
- * - expensive - if the task is in the middle of network I/O, canceling can take time
- * - important - if we don't, we allow multiple requests of the same time, and this means
- *   we can't guarantee that the result callback is called in the correct order and this can
- *   cause UI issues.
- * - delicate in that we must ensure that it's not called on an UI thread.
+ * Canceling an OkHttp call does not block, so we cancel on the current thread and the canceled
+ * task quickly frees up its dispatcher slot.
  *
- * For this reason we do cancel running tasks but use the same {@link BranchExecutor} to schedule
- * the cancel operations. The cancel op. will free up a running thread for future requests.
+ * Each handler also has a concurrency limit. The shared dispatcher pool is small, so without it
+ * a single busy channel could take all of it while its canceled calls wind down. Tasks exceeding
+ * the limit wait in this handler and start as soon as one of the running tasks finishes.
  *
- * Each POST or GET request can trigger 2 (short-lived) thread requests.
- * The {@link BranchExecutor} pool size is set here to 6, which is just a maximum limit.
- * These threads are cached and only instantiated when needed.
+ * Finally, each handler has a {@link BranchRequestPolicy} that can hold new requests back for
+ * a while, so that only the latest of a burst of requests is actually started. Held back
+ * requests that get replaced are canceled without ever touching the network. Timers run on the
+ * main thread, but tasks are only started there, never executed.
  *
- * If we happen to need more than 6 threads at the same time, requests are enqueued by
- * {@link BranchExecutor} and will wait for currently running ops to finish, which would have
- * an impact on latency. But hopefully this should not happen too often, and some of these busy
- * threads will always be cancel requests that are executed much faster than network request.
+ * A new request that is identical to the held or current task of its type does not replace it.
+ * It joins that task instead, and receives the same response.
  */
 class URLConnectionNetworkHandler {
 
-    private final BranchExecutor executor = new BranchExecutor(6);
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
     private final Object lock = new Object();
+    private final BranchSearch.Channel channel;
+    private final int maxConcurrentRequests;
+    private final BranchRequestPolicy policy;
+    private final Queue<URLConnectionTask> waitingTasks = new ArrayDeque<>();
+    private int runningCount;
 
-    private URLConnectionTask postTask;
-    private URLConnectionTask getTask;
+    private final Lane postLane = new Lane();
+    private final Lane getLane = new Lane();
+
+    /**
+     * Tasks of the same type replace each other. A lane holds the state for one type.
+     */
+    private class Lane {
+        // The last started task. It might still be waiting for a slot in waitingTasks.
+        private URLConnectionTask currentTask;
+        // The task held back by the policy, if any.
+        private URLConnectionTask heldTask;
+        // The uptime at which the current throttle window ends, or 0 if there's none.
+        private long windowEnd;
+
+        private final Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    onRelease(Lane.this);
+                }
+            }
+        };
+    }
+
+    private final Runnable onTaskFinished = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (lock) {
+                runningCount--;
+                startWaitingTasks();
+            }
+        }
+    };
+
+    private URLConnectionNetworkHandler(@Nullable BranchSearch.Channel channel,
+                                        int maxConcurrentRequests,
+                                        @NonNull BranchRequestPolicy policy) {
+        this.channel = channel;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.policy = policy;
+    }
 
     void executePost(@NonNull String url,
-                     @NonNull JSONObject payload,
-                     @Nullable IURLConnectionEvents callback) {
+                     @NonNull BranchPayload payload,
+                     @Nullable BranchResponseParser<?> parser) {
+        URLConnectionTask task = URLConnectionTask.forPost(channel, url, payload, parser);
         synchronized (lock) {
-            final URLConnectionTask oldTask = postTask;
-            postTask = URLConnectionTask.forPost(url, payload, callback);
-            postTask.executeOnExecutor(executor);
-            cancelTask(oldTask);
+            if (!coalesce(postLane, task)) submit(postLane, task);
         }
     }
 
     void executeGet(@NonNull String url,
-                    @Nullable IURLConnectionEvents callback) {
+                    @Nullable BranchResponseParser<?> parser) {
+        URLConnectionTask task = URLConnectionTask.forGet(channel, url, parser);
         synchronized (lock) {
-            final URLConnectionTask oldTask = getTask;
-            getTask = URLConnectionTask.forGet(url, callback);
-            getTask.executeOnExecutor(executor);
-            cancelTask(oldTask);
+            if (!coalesce(getLane, task)) submit(getLane, task);
         }
     }
 
+    /**
+     * Delivers a result that is already available, for example from a cache, as if it came
+     * from a new POST request. Like a new request, this cancels the pending ones, so that
+     * their results can not replace this one.
+     * @param result the result
+     * @param parser the parser that will receive it
+     */
+    void deliverPost(@NonNull Object result,
+                     @NonNull BranchResponseParser<?> parser) {
+        deliver(postLane, result, parser);
+    }
+
+    /**
+     * Same as {@link #deliverPost(Object, BranchResponseParser)}, for GET requests.
+     * @param result the result
+     * @param parser the parser that will receive it
+     */
+    void deliverGet(@NonNull Object result,
+                    @NonNull BranchResponseParser<?> parser) {
+        deliver(getLane, result, parser);
+    }
+
+    private void deliver(@NonNull Lane lane,
+                         @NonNull final Object result,
+                         @NonNull final BranchResponseParser<?> parser) {
+        synchronized (lock) {
+            if (lane.heldTask != null) {
+                lane.heldTask.cancel();
+                lane.heldTask = null;
+            }
+            cancelTask(lane.currentTask);
+            lane.currentTask = null;
+        }
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                parser.dispatch(result);
+            }
+        });
+    }
+
+    // Must hold lock
+    private boolean coalesce(@NonNull Lane lane, @NonNull URLConnectionTask task) {
+        // The held task, if any, is the most recent request.
+        if (lane.heldTask != null && lane.heldTask.join(task)) return true;
+        if (lane.currentTask != null && lane.currentTask.join(task)) {
+            // The new request brings us back to the current one, which makes
+            // the held task obsolete.
+            if (lane.heldTask != null) {
+                lane.heldTask.cancel();
+                lane.heldTask = null;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Must hold lock
+    private void submit(@NonNull Lane lane, @NonNull URLConnectionTask task) {
+        switch (policy.getMode()) {
+            case DEBOUNCE:
+                hold(lane, task);
+                MAIN_HANDLER.removeCallbacks(lane.release);
+                MAIN_HANDLER.postDelayed(lane.release, policy.getIntervalMillis());
+                break;
+            case THROTTLE:
+            case LEADING_AND_TRAILING:
+                if (lane.windowEnd == 0) {
+                    // No open window: this task opens one.
+                    if (policy.getMode() == BranchRequestPolicy.Mode.LEADING_AND_TRAILING) {
+                        start(lane, task);
+                    } else {
+                        hold(lane, task);
+                    }
+                    openWindow(lane);
+                } else {
+                    hold(lane, task);
+                }
+                break;
+            case IMMEDIATE:
+            default:
+                start(lane, task);
+                break;
+        }
+    }
+
+    // Must hold lock
+    private void onRelease(@NonNull Lane lane) {
+        URLConnectionTask task = lane.heldTask;
+        lane.heldTask = null;
+        lane.windowEnd = 0;
+        if (task != null) {
+            start(lane, task);
+            // Keep throttling: the next task must wait for the end of a new window.
+            if (policy.getMode() != BranchRequestPolicy.Mode.DEBOUNCE) {
+                openWindow(lane);
+            }
+        }
+    }
+
+    // Must hold lock
+    private void openWindow(@NonNull Lane lane) {
+        lane.windowEnd = SystemClock.uptimeMillis() + policy.getIntervalMillis();
+        MAIN_HANDLER.postAtTime(lane.release, lane.windowEnd);
+    }
+
+    // Must hold lock
+    private void hold(@NonNull Lane lane, @NonNull URLConnectionTask task) {
+        URLConnectionTask oldTask = lane.heldTask;
+        lane.heldTask = task;
+        if (oldTask != null) oldTask.cancel();
+    }
+
+    // Must hold lock
+    private void start(@NonNull Lane lane, @NonNull URLConnectionTask task) {
+        final URLConnectionTask oldTask = lane.currentTask;
+        lane.currentTask = task;
+        schedule(task);
+        cancelTask(oldTask);
+    }
+
+    // Must hold lock
+    private void schedule(@NonNull URLConnectionTask task) {
+        waitingTasks.add(task);
+        startWaitingTasks();
+    }
+
+    // Must hold lock
+    private void startWaitingTasks() {
+        while (runningCount < maxConcurrentRequests && !waitingTasks.isEmpty()) {
+            URLConnectionTask task = waitingTasks.poll();
+            try {
+                task.execute(onTaskFinished);
+            } catch (RuntimeException e) {
+                // For example, an invalid url. The task never started, so it takes no slot.
+                task.fail(new BranchSearchError(BranchSearchError.ERR_CODE.BAD_REQUEST_ERR));
+                continue;
+            }
+            // onTaskFinished needs the lock, so it can't run before this.
+            runningCount++;
+        }
+    }
+
+    // Must hold lock
     private void cancelTask(final @Nullable URLConnectionTask task) {
         if (task == null) return;
-        boolean isUiThread = Thread.currentThread() == Looper.getMainLooper().getThread();
-        // If we're on the UI thread, we can't / shouldn't cancel a network op on the UI thread.
-        // If not, we can cancel on current thread without adding workload to the executor.
-        if (isUiThread) {
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    task.cancel();
-                }
-            });
-        } else {
-            task.cancel();
+        // If it never started, it will never finish either, so just drop it.
+        waitingTasks.remove(task);
+        task.cancel();
+    }
+
+    /**
+     * @return the number of tasks of this handler that are currently executing
+     */
+    int getRunningCount() {
+        synchronized (lock) {
+            return runningCount;
+        }
+    }
+
+    /**
+     * @return the number of tasks of this handler waiting for a free slot. Tasks held back
+     * by the policy are not included
+     */
+    int getQueueDepth() {
+        synchronized (lock) {
+            return waitingTasks.size();
         }
     }
 
@@ -85,7 +285,22 @@ class URLConnectionNetworkHandler {
      */
     @NonNull
     static URLConnectionNetworkHandler initialize() {
-        return new URLConnectionNetworkHandler();
+        return initialize(null, DEFAULT_MAX_CONCURRENT_REQUESTS, BranchRequestPolicy.immediate());
+    }
+
+    /**
+     * Create an instance of the NetworkHandler.
+     * @param channel the channel whose requests this handler executes, used to tag them for
+     *                {@link BranchLatencyRecorder}, or null for untracked requests
+     * @param maxConcurrentRequests how many requests of this handler can execute at once
+     * @param policy when to start new requests
+     * @return a new URLConnectionNetworkHandler
+     */
+    @NonNull
+    static URLConnectionNetworkHandler initialize(@Nullable BranchSearch.Channel channel,
+                                                  int maxConcurrentRequests,
+                                                  @NonNull BranchRequestPolicy policy) {
+        return new URLConnectionNetworkHandler(channel, maxConcurrentRequests, policy);
     }
 
 }
@@ -1,270 +1,458 @@
 package io.branch.search;
 
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
-import android.util.Log;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
-import java.io.UnsupportedEncodingException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
+import okhttp3.Callback;
 import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.internal.http2.StreamResetException;
 
 /**
  * URLConnection Task.
+ *
+ * Requests are enqueued on the OkHttp dispatcher of {@link BranchHttpClient}, which is shared by
+ * all network channels. Each call holds one dispatcher thread while it runs, so the pool size
+ * bounds the concurrent requests, but the caller is never blocked. The payload is serialized
+ * and encrypted by the request body on that dispatcher thread too. The response is read and parsed by the
+ * {@link BranchResponseParser} on the dispatcher thread that received it, and only the finished
+ * result is posted to the main thread. Successful responses of parsers that have a
+ * {@link BranchResponseParser#getStreamingParser() streaming parser} are parsed while they are
+ * read, so the body is never held in memory as a whole. If encrypted, only the decrypted JSON is
+ * streamed: the envelope is read first, and its base64 data is held once as a string.
+ *
+ * Identical requests can {@link #join(URLConnectionTask)} a task that was already started:
+ * the response is then parsed once and delivered to all of their parsers.
  */
-class URLConnectionTask extends AsyncTask<Void, Void, JSONObject> {
+class URLConnectionTask implements Callback {
 
-    private static final MediaType POST_JSON = MediaType.parse("application/json; charset=utf-8");
-    private static final long CONFIG_TIMEOUT_MILLIS = 6000;
-
-    @VisibleForTesting
-    static OkHttpClient sClient = new OkHttpClient.Builder()
-            .callTimeout(CONFIG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
-            .retryOnConnectionFailure(true)
-            .build();
-
-    private static long sLastPostRTT = -1; // Last post request round trip time
-    private static long sLastGetRTT = -1; // Last get request round trip time
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
 
     /**
      * Creates a new task for a GET request.
+     * @param channel the channel of this request, or null if it should not be tracked
      * @param url target url
-     * @param callback callback
+     * @param parser response parser
      * @return a new task
      */
     @NonNull
-    static URLConnectionTask forGet(@NonNull String url,
-                                    @Nullable IURLConnectionEvents callback) {
-        if (sLastGetRTT >= 0) {
-            url = Uri.parse(url)
-                    .buildUpon()
-                    .appendQueryParameter("lr_rtt", String.valueOf(sLastGetRTT))
-                    .build()
-                    .toString();
-            sLastGetRTT = -1;
-        }
-        return new URLConnectionTask(url, null, callback, false);
+    static URLConnectionTask forGet(@Nullable BranchSearch.Channel channel,
+                                    @NonNull String url,
+                                    @Nullable BranchResponseParser<?> parser) {
+        return new URLConnectionTask(channel, url, null, parser);
     }
 
     /**
      * Creates a new task for a POST request.
+     * @param channel the channel of this request, or null if it should not be tracked
      * @param url target url
      * @param params post params
-     * @param callback callback
+     * @param parser response parser
      * @return a new task
      */
     @NonNull
-    static URLConnectionTask forPost(@NonNull String url,
-                                     @NonNull JSONObject params,
-                                     @Nullable IURLConnectionEvents callback) {
-        if (sLastPostRTT >= 0) {
-            try {
-                params.putOpt("lr_rtt", sLastPostRTT);
-            } catch (JSONException ignore) {}
-            sLastPostRTT = -1;
-        }
-        return new URLConnectionTask(url, params, callback, true);
-
+    static URLConnectionTask forPost(@Nullable BranchSearch.Channel channel,
+                                     @NonNull String url,
+                                     @NonNull BranchPayload params,
+                                     @Nullable BranchResponseParser<?> parser) {
+        return new URLConnectionTask(channel, url, params, parser);
     }
 
+    private final BranchSearch.Channel mChannel;
     private final String mUrl;
-    private final IURLConnectionEvents mCallback;
-    private Request.Builder mBuilder;
-    private final JSONObject payload;
-    private JSONObject encryptedPayload;
-    private final Object mCallbackCalledLock = new Object();
-    private final boolean mIsPost;
-    private boolean mCallbackCalled;
+    private String mKey; // Guarded by this, computed on first join
+    // Guarded by this. The first parser is the one of this task, the others joined later.
+    private final List<BranchResponseParser<?>> mParsers = new ArrayList<>(1);
+    private boolean mResponded; // Guarded by this
+    private final BranchPayload payload;
+    private boolean mEncrypted;
+    private boolean mCallbackCalled; // Only accessed on the main thread
+    private volatile boolean mCanceled;
+    private Runnable mOnFinished;
     private String uploadIV;
     @VisibleForTesting Call mCall;
 
-    private URLConnectionTask(@NonNull String url,
-                              @Nullable JSONObject params,
-                              @Nullable IURLConnectionEvents callback,
-                              boolean isPost) {
+    private URLConnectionTask(@Nullable BranchSearch.Channel channel,
+                              @NonNull String url,
+                              @Nullable BranchPayload params,
+                              @Nullable BranchResponseParser<?> parser) {
+        mChannel = channel;
         mUrl = url;
         payload = params;
-        mCallback = callback;
-        mIsPost = isPost;
+        if (parser != null) mParsers.add(parser);
         this.uploadIV = String.format(new Locale("en", "US"), "%.0f", (Math.random() * Math.pow(10, 16)));
     }
 
-    @Override
-    protected void onPostExecute(JSONObject jsonObject) {
-        super.onPostExecute(jsonObject);
-        synchronized (mCallbackCalledLock) {
-            if (!mCallbackCalled) {
-                if (mCallback != null) {
-                    mCallback.onResult(jsonObject);
-                }
-                mCallbackCalled = true;
-            }
-        }
-    }
-
-    @Override
-    protected void onCancelled() {
-        super.onCancelled();
-        synchronized (mCallbackCalledLock) {
-            if (!mCallbackCalled) {
-                // Ensure we call our callback with the appropriate code.
-                if (mCallback != null) {
-                    mCallback.onResult(new BranchSearchError(
-                            BranchSearchError.ERR_CODE.REQUEST_CANCELED));
-                }
-                mCallbackCalled = true;
+    /**
+     * Builds the request and enqueues it. Returns immediately.
+     * @param onFinished called on a worker thread once the call is over and its dispatcher
+     *                   thread is about to be released, whether it succeeded, failed or was canceled
+     */
+    void execute(@Nullable Runnable onFinished) {
+        mOnFinished = onFinished;
+        // Report the round trip time of the last request of this channel, then clear it.
+        // This is done here rather than at creation, because tasks can be held back and
+        // replaced before they are executed.
+        String url = mUrl;
+        long lastRTT = BranchLatencyRecorder.pollLastRoundTrip(mChannel, payload == null
+                ? BranchSearchMetrics.Method.GET : BranchSearchMetrics.Method.POST);
+        if (lastRTT >= 0) {
+            if (payload == null) {
+                url = Uri.parse(url)
+                        .buildUpon()
+                        .appendQueryParameter("lr_rtt", String.valueOf(lastRTT))
+                        .build()
+                        .toString();
+            } else {
+                try {
+                    payload.getValues().putOpt("lr_rtt", lastRTT);
+                } catch (JSONException ignore) {}
             }
         }
-    }
-
 
-    @Override
-    protected JSONObject doInBackground(Void... voids) {
         // If POST, we should have Content-Type: application/json in the request,
         // but this should be already done by OkHttp when creating the post body.
+        Request.Builder builder;
         if (payload == null) {
-            mBuilder = new Request.Builder().get();
-        } else if (mUrl.equals(BranchSearchInterface.BRANCH_SEARCH_URL) ||
-                mUrl.equals(BranchSearchInterface.BRANCH_QUERYHINT_URL) ||
-                mUrl.equals(BranchSearchInterface.BRANCH_AUTOSUGGEST_URL)) {
-            try {
-                String cipherText = Branchcryption.encrypt(payload.toString(), uploadIV).trim();
-                encryptedPayload = new JSONObject().put(Branchcryption.jsonKeyData, cipherText).put(Branchcryption.jsonKeyIV, uploadIV);
-                mBuilder = new Request.Builder().post(RequestBody.create(POST_JSON, encryptedPayload.toString()));
-                mBuilder.addHeader(Branchcryption.headerKey, Branchcryption.keyId);
-            } catch (Exception e) {
-                mBuilder = new Request.Builder().post(RequestBody.create(POST_JSON, payload.toString()));
-            }
+            builder = new Request.Builder().get();
         } else {
-            mBuilder = new Request.Builder().post(RequestBody.create(POST_JSON, payload.toString()));
+            // Whether to encrypt is decided here, since it sets a header, but the payload is
+            // written and encrypted by the body, once the dispatcher thread runs the call.
+            mEncrypted = Branchcryption.isAvailable() &&
+                    (mUrl.equals(BranchSearchInterface.BRANCH_SEARCH_URL) ||
+                    mUrl.equals(BranchSearchInterface.BRANCH_QUERYHINT_URL) ||
+                    mUrl.equals(BranchSearchInterface.BRANCH_AUTOSUGGEST_URL));
+            builder = new Request.Builder().post(BranchPayloadWriter.createBody(payload,
+                    mEncrypted ? uploadIV : null));
+            if (mEncrypted) builder.addHeader(Branchcryption.headerKey, Branchcryption.keyId);
         }
-        mBuilder.addHeader("Accept", "application/json");
+        builder.addHeader("Accept", "application/json");
         // Do NOT add "Accept-Encoding"! Instead, rely on OkHttp adding that automatically,
         // which is done in their BridgeInterceptor. If we do add 'just to be sure', then
         // OkHttp will not automatically unzip the response, which would be an issue.
-        // mBuilder.addHeader("Accept-Encoding", "gzip");
-        mBuilder.url(mUrl);
-        return executeRequest();
+        // builder.addHeader("Accept-Encoding", "gzip");
+        builder.url(url);
+        // Lets BranchEventListener record the latency of this call for our channel,
+        // and its round trip for the next request, even without a channel.
+        builder.tag(URLConnectionTask.class, this);
+        if (mChannel != null) builder.tag(BranchSearch.Channel.class, mChannel);
+
+        mCall = BranchHttpClient.getApiClient().newCall(builder.build());
+        mCall.enqueue(this);
+    }
+
+    /**
+     * Attaches the parser of an identical task to this one, so that a single request serves both.
+     * This only works until the response comes in, and only if this task was not canceled.
+     * @param duplicate a task that was not executed
+     * @return true if the duplicate parser was attached and the duplicate task can be dropped
+     */
+    synchronized boolean join(@NonNull URLConnectionTask duplicate) {
+        if (mResponded || mCanceled || mParsers.isEmpty() || duplicate.mParsers.isEmpty()) return false;
+        if (!mUrl.equals(duplicate.mUrl) || !getKey().equals(duplicate.getKey())) return false;
+        mParsers.addAll(duplicate.mParsers);
+        return true;
+    }
+
+    @NonNull
+    private synchronized String getKey() {
+        // The payload is only read here, so this is safe while the body writes it.
+        if (mKey == null) mKey = BranchRequestKey.create(mUrl, payload);
+        return mKey;
     }
 
     @NonNull
-    private JSONObject executeRequest() {
-        long startTime = System.currentTimeMillis();
-        mCall = sClient.newCall(mBuilder.build());
-        Response response = null;
+    private synchronized List<BranchResponseParser<?>> onResponded() {
+        mResponded = true;
+        return mParsers;
+    }
+
+    /**
+     * Delivers an error for a task that could not be executed. Its onFinished callback is
+     * not called.
+     * @param error the error
+     */
+    void fail(@NonNull BranchSearchError error) {
+        onResponded();
+        deliver(error);
+    }
+
+    @WorkerThread
+    @Override
+    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        onResponded();
+        deliver(createError(e));
+        finish();
+    }
+
+    @WorkerThread
+    @Override
+    public void onResponse(@NonNull Call call, @NonNull Response response) {
+        // No parser can join from now on, so it's safe to read the list without locking.
+        List<BranchResponseParser<?>> parsers = onResponded();
+        BranchResponseParser<?> parser = parsers.isEmpty() ? null : parsers.get(0);
+        BranchStreamingParser<?> streamingParser = parser == null ? null : parser.getStreamingParser();
+        Object result;
         try {
-            // Execute the call and save the RTT
-            response = mCall.execute();
-            long endTime = System.currentTimeMillis();
-            if (mIsPost) {
-                sLastPostRTT = endTime - startTime;
+            if (streamingParser != null && !mCanceled
+                    && response.code() == 200 && response.body() != null) {
+                result = streamResponse(response, streamingParser);
             } else {
-                sLastGetRTT = endTime - startTime;
+                result = readResponse(response);
             }
+        } catch (IOException e) {
+            result = createError(e);
+        } finally {
+            try {
+                response.close();
+            } catch (Exception ignore) {}
+        }
 
-            // Check the response code
-            // If >= 500, retry or return a server error..
-            int code = response.code();
-            if (code >= 500) {
-                return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        // Parse here, on the dispatcher thread. If we were canceled in the meantime, there's no
+        // point in parsing since the result would be dropped anyway.
+        try {
+            if (parser == null || !(result instanceof JSONObject) || mCanceled) {
+                deliver(result);
+            } else {
+                deliver(parser.parse((JSONObject) result));
             }
+        } finally {
+            finish();
+        }
+    }
+
+    @WorkerThread
+    private void finish() {
+        if (mOnFinished != null) mOnFinished.run();
+    }
+
+    /**
+     * Posts the result to the main thread. Only the first result is delivered, and if this
+     * task was canceled, the result is replaced by a {@link BranchSearchError.ERR_CODE#REQUEST_CANCELED}
+     * error.
+     * @param result a parsed result or an error
+     */
+    private void deliver(@NonNull final Object result) {
+        synchronized (this) {
+            if (mParsers.isEmpty()) return;
+        }
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(mCanceled ? new BranchSearchError(
+                        BranchSearchError.ERR_CODE.REQUEST_CANCELED) : result);
+            }
+        });
+    }
 
-            // This should never happen...?
-            if (response.body() == null) {
-                return new BranchSearchError(BranchSearchError.ERR_CODE.UNKNOWN_ERR);
+    @MainThread
+    private void dispatch(@NonNull Object result) {
+        if (!mCallbackCalled) {
+            mCallbackCalled = true;
+            List<BranchResponseParser<?>> parsers;
+            synchronized (this) {
+                // Nothing can join once we're called, since this happens after a response or cancel.
+                parsers = new ArrayList<>(mParsers);
             }
+            for (int i = 0; i < parsers.size(); i++) {
+                BranchResponseParser<?> parser = parsers.get(i);
+                if (i == 0 || result instanceof BranchSearchError) {
+                    parser.dispatch(result);
+                } else {
+                    // The result was parsed by the first parser. Let the others adapt it.
+                    parser.dispatch(parser.adoptResult(result));
+                }
+            }
+        }
+    }
+
+    @WorkerThread
+    @NonNull
+    private JSONObject readResponse(@NonNull Response response) throws IOException {
+        // Check the response code
+        // If >= 500, retry or return a server error..
+        int code = response.code();
+        if (code >= 500) {
+            return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        }
 
-            // At this point we should have a valid server response
-            String body = response.body().string();
-            JSONObject result;
+        // This should never happen...?
+        if (response.body() == null) {
+            return new BranchSearchError(BranchSearchError.ERR_CODE.UNKNOWN_ERR);
+        }
+
+        // At this point we should have a valid server response
+        String body = response.body().string();
+        JSONObject result;
+        try {
+            result = new JSONObject(body);
+        } catch (JSONException ignore) {
+            return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        }
+        if (mEncrypted &&
+                Branchcryption.keyId.equals(response.header(Branchcryption.headerKey)) &&
+                result.has(Branchcryption.jsonKeyData) &&
+                result.has(Branchcryption.jsonKeyIV)) {
             try {
-                result = new JSONObject(body);
-            } catch (JSONException ignore) {
+                String responseIV = result.getString(Branchcryption.jsonKeyIV);
+                result = new JSONObject(Branchcryption.decrypt(result.getString(Branchcryption.jsonKeyData), responseIV));
+            } catch (Exception e) {
                 return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
             }
-            boolean requestWasEncrypted = encryptedPayload != null;
-            if (requestWasEncrypted &&
-                    Branchcryption.keyId.equals(response.header(Branchcryption.headerKey)) &&
-                    result.has(Branchcryption.jsonKeyData) &&
-                    result.has(Branchcryption.jsonKeyIV)) {
-                try {
-                    String responseIV = result.getString(Branchcryption.jsonKeyIV);
-                    result = new JSONObject(Branchcryption.decrypt(result.getString(Branchcryption.jsonKeyData), responseIV));
-                } catch (Exception e) {
-                    return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        }
+
+        if (code == 200) {
+            // If code == 200, the response body is also our response.
+            return result;
+        } else {
+            // Try to parse an error.
+            try {
+                if (result.has("error") && result.getJSONObject("error").has("message")) {
+                    return new BranchSearchError(result.getJSONObject("error"));
+                } else if (result.has("code") && result.has("message")) {
+                    return new BranchSearchError(result);
+                } else {
+                    // Not 200, but does not fit our BranchSearchError scheme.
+                    // Return a custom error if >= 400, otherwise return itself.
+                    if (code >= 400) {
+                        return new BranchSearchError(BranchSearchError.ERR_CODE.convert(code));
+                    } else {
+                        return result;
+                    }
                 }
+            } catch (JSONException e) {
+                // Not 200, but something when wrong when inspecting the result. Return itself.
+                return result;
             }
+        }
+    }
 
-            if (code == 200) {
-                // If code == 200, the response body is also our response.
-                return result;
-            } else {
-                // Try to parse an error.
-                try {
-                    if (result.has("error") && result.getJSONObject("error").has("message")) {
-                        return new BranchSearchError(result.getJSONObject("error"));
-                    } else if (result.has("code") && result.has("message")) {
-                        return new BranchSearchError(result);
+    /**
+     * Parses a successful response while it is downloaded.
+     * @return the parsed result or an error
+     */
+    @WorkerThread
+    @NonNull
+    private Object streamResponse(@NonNull Response response,
+                                  @NonNull BranchStreamingParser<?> parser) throws IOException {
+        // Body is not null, we checked
+        //noinspection ConstantConditions
+        ResponseBody body = response.body();
+        JsonReader reader = new JsonReader(body.charStream());
+        try {
+            if (mEncrypted &&
+                    Branchcryption.keyId.equals(response.header(Branchcryption.headerKey))) {
+                // Read the envelope, then stream the data through the cipher. JsonReader can
+                // only return the data string as a whole, so that is held in memory once.
+                String data = null;
+                String responseIV = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals(Branchcryption.jsonKeyData)) {
+                        data = reader.nextString();
+                    } else if (name.equals(Branchcryption.jsonKeyIV)) {
+                        responseIV = reader.nextString();
                     } else {
-                        // Not 200, but does not fit our BranchSearchError scheme.
-                        // Return a custom error if >= 400, otherwise return itself.
-                        if (code >= 400) {
-                            return new BranchSearchError(BranchSearchError.ERR_CODE.convert(code));
-                        } else {
-                            return result;
-                        }
+                        reader.skipValue();
                     }
-                } catch (JSONException e) {
-                    // Not 200, but something when wrong when inspecting the result. Return itself.
-                    return result;
+                }
+                reader.endObject();
+                if (data == null || responseIV == null) {
+                    return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+                }
+                try {
+                    reader = new JsonReader(new InputStreamReader(Branchcryption.decrypt(
+                            new AsciiInputStream(data), responseIV), "UTF-8"));
+                } catch (Exception e) {
+                    return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
                 }
             }
-        } catch (StreamResetException | SocketException | InterruptedIOException e) {
-            // The meaning of exceptions in these catch blocks is not documented - at least,
+            return parser.parse(reader);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            return new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        }
+    }
+
+    @NonNull
+    private static BranchSearchError createError(@NonNull IOException e) {
+        if (e instanceof StreamResetException
+                || e instanceof SocketException
+                || e instanceof InterruptedIOException) {
+            // The meaning of these exceptions is not documented - at least,
             // it's not clear which exceptions are thrown by OkHttp. And even worse, their
             // meaning changes based on the retryOnConnectionFailure() value.
             // If retryOnConnectionFailure() is set to false, please replace InterruptedIOException
             // with SocketTimeoutException here.
             return new BranchSearchError(BranchSearchError.ERR_CODE.REQUEST_TIMED_OUT_ERR);
-        } catch (UnknownHostException e) {
+        } else if (e instanceof UnknownHostException) {
             return new BranchSearchError(BranchSearchError.ERR_CODE.BRANCH_NO_CONNECTIVITY_ERR);
-        } catch (IOException e) {
+        } else {
             return new BranchSearchError(BranchSearchError.ERR_CODE.UNKNOWN_ERR);
-        } finally {
-            if (response != null) {
-                try {
-                    response.close();
-                } catch (Exception ignore) {}
-            }
         }
     }
 
-    @WorkerThread
+    /**
+     * Cancels this task. Can be called from any thread, since canceling an OkHttp call does
+     * not block.
+     */
     void cancel() {
-        // Cancel AsyncTask first, then the OkHttp call. If we do the opposite,
-        // the executeRequest method can receive a quick IOException and return UNKNOWN_ERR.
-        // By canceling the AsyncTask first, we should get the cancel callback first,
-        // and correctly dispatch the REQUEST_CANCELED error.
-        cancel(true);
-        if (mCall != null)  mCall.cancel();
+        // Set the flag first, then cancel the OkHttp call. If we do the opposite,
+        // onFailure can receive a quick IOException and deliver UNKNOWN_ERR.
+        // With the flag set, whatever result comes next is replaced by REQUEST_CANCELED.
+        mCanceled = true;
+        if (mCall != null) mCall.cancel();
+        deliver(new BranchSearchError(BranchSearchError.ERR_CODE.REQUEST_CANCELED));
+    }
+
+    /**
+     * Reads the characters of a base64 string as bytes, without copying it.
+     */
+    private static class AsciiInputStream extends InputStream {
+        private final String text;
+        private int position;
+
+        AsciiInputStream(@NonNull String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? text.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) {
+            if (length == 0) return 0;
+            if (position >= text.length()) return -1;
+            int count = Math.min(length, text.length() - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) text.charAt(position++);
+            }
+            return count;
+        }
     }
 }
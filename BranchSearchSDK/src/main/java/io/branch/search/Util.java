@@ -7,11 +7,16 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
+import android.util.JsonReader;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Locale;
 
 /**
@@ -105,7 +110,7 @@ class Util {
             try {
                 Intent intent = context.getPackageManager().getLaunchIntentForPackage(destinationStoreID);
                 int intentFlags = BranchSearch.getInstance()
-                        .getBranchConfiguration()
+                        .getConfiguration()
                         .getLaunchIntentFlags();
                 intent.setFlags(intentFlags);
                 context.startActivity(intent);
@@ -123,7 +128,7 @@ class Util {
         if (!TextUtils.isEmpty(destinationStoreID)) {
             Intent intent = new Intent(Intent.ACTION_VIEW);
             int intentFlags = BranchSearch.getInstance()
-                    .getBranchConfiguration()
+                    .getConfiguration()
                     .getLaunchIntentFlags();
             intent.setFlags(intentFlags);
 
@@ -143,6 +148,11 @@ class Util {
     }
 
     static boolean isAppInstalled(@NonNull Context context, @NonNull String packageName) {
+        // Use the index if it's ready, to avoid a binder call.
+        BranchPackageIndex index = BranchPackageIndex.getInstance();
+        Boolean installed = index == null ? null : index.isInstalled(packageName);
+        if (installed != null) return installed;
+
         PackageManager manager = context.getPackageManager();
         try {
             manager.getPackageInfo(packageName, 0);
@@ -171,6 +181,99 @@ class Util {
             return json.optString(key, "");
     }
 
+    /**
+     * Like {@link #optString(JSONObject, String)}, for a value read by {@link #readJsonValue(JsonReader)}.
+     * @param value the value, or null if missing
+     * @return the value as a string, or the empty string if null or missing
+     */
+    @NonNull
+    static String asString(@Nullable Object value) {
+        if (value == null || value == JSONObject.NULL) return "";
+        return String.valueOf(value);
+    }
+
+    /**
+     * Like {@link JSONObject#optDouble(String, double)}, for a value read by
+     * {@link #readJsonValue(JsonReader)}.
+     * @param value the value, or null if missing
+     * @param fallback returned if missing or not a number
+     * @return the value as a double
+     */
+    static double asDouble(@Nullable Object value, double fallback) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String) {
+            try {
+                return Double.valueOf((String) value);
+            } catch (NumberFormatException ignore) {}
+        }
+        return fallback;
+    }
+
+    /**
+     * Like {@link JSONObject#optInt(String, int)}, for a value read by
+     * {@link #readJsonValue(JsonReader)}.
+     * @param value the value, or null if missing
+     * @param fallback returned if missing or not a number
+     * @return the value as an int
+     */
+    static int asInt(@Nullable Object value, int fallback) {
+        if (value instanceof Number) return ((Number) value).intValue();
+        if (value instanceof String) {
+            try {
+                return (int) Double.parseDouble((String) value);
+            } catch (NumberFormatException ignore) {}
+        }
+        return fallback;
+    }
+
+    /**
+     * Reads the next value of a streamed response into the type that {@link JSONObject} would
+     * use for it, so that small parts of a large response can go through the JSONObject parsers.
+     * @param reader a reader
+     * @return a JSONObject, JSONArray, String, Boolean, Number or {@link JSONObject#NULL}
+     * @throws IOException if reading fails
+     */
+    static Object readJsonValue(@NonNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    Object value = readJsonValue(reader);
+                    try {
+                        object.put(name, value);
+                    } catch (JSONException ignore) {
+                        // Can't happen: we never read NaN or infinite numbers.
+                    }
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readJsonValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
 
 
 }
@@ -0,0 +1,113 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchAutoSuggestCacheTest {
+
+    private static final long TTL = 60000;
+
+    private final BranchAutoSuggestCache cache = new BranchAutoSuggestCache(10, TTL, 0);
+
+    @Test
+    public void testExactQuery() throws JSONException {
+        cache.put(createPayload("Pizza", 5), createResult("pizza hut", "pizza express"));
+        BranchAutoSuggestResult result = cache.get(createPayload("pizza ", 5));
+        assertEquals(Arrays.asList("pizza hut", "pizza express"), getQueries(result));
+        assertTrue(result.isFromCache());
+        assertFalse(result.isStale());
+    }
+
+    @Test
+    public void testPrefixWithEnoughSuggestions() throws JSONException {
+        cache.put(createPayload("piz", 2),
+                createResult("pizza hut", "pizzeria", "pizza express"));
+        // Only the first two matches are returned, like the server would.
+        assertEquals(Arrays.asList("pizza hut", "pizza express"),
+                getQueries(cache.get(createPayload("pizza", 2))));
+    }
+
+    @Test
+    public void testPrefixWithTooFewSuggestions() throws JSONException {
+        // The prefix entry is full, so the server might have more suggestions for "pizza".
+        cache.put(createPayload("piz", 3),
+                createResult("pizza hut", "pizzeria", "pizza express"));
+        assertNull(cache.get(createPayload("pizza", 3)));
+    }
+
+    @Test
+    public void testCompletePrefix() throws JSONException {
+        // The prefix entry is shorter than its limit: the server had nothing else.
+        cache.put(createPayload("piz", 5), createResult("pizza hut", "pizzeria"));
+        assertEquals(Arrays.asList("pizza hut"),
+                getQueries(cache.get(createPayload("pizza", 5))));
+        assertNull(cache.get(createPayload("pizzx", 5)));
+    }
+
+    @Test
+    public void testPrefixWithoutLimit() throws JSONException {
+        cache.put(createPayload("piz", 0), createResult("pizza hut"));
+        assertNull(cache.get(createPayload("pizza", 0)));
+    }
+
+    @Test
+    public void testPrefixMatchesWords() throws JSONException {
+        cache.put(createPayload("h", 5), createResult("pizza hut", "hamburger"));
+        assertEquals(Arrays.asList("pizza hut"),
+                getQueries(cache.get(createPayload("hu", 5))));
+    }
+
+    @Test
+    public void testEmptyResultsAreNotCached() throws JSONException {
+        cache.put(createPayload("pizzx", 5), createResult());
+        assertNull(cache.get(createPayload("pizzx", 5)));
+        assertNull(cache.get(createPayload("pizzxy", 5)));
+    }
+
+    @Test
+    public void testContextMustMatch() throws JSONException {
+        cache.put(createPayload("pizza", 5), createResult("pizza hut"));
+        assertNull(cache.get(createPayload("pizza", 4)));
+    }
+
+    @NonNull
+    private static BranchPayload createPayload(@NonNull String query, int maxResults)
+            throws JSONException {
+        JSONObject values = new JSONObject().put(BranchAutoSuggestRequest.KEY_USER_QUERY, query);
+        if (maxResults > 0) values.put(BranchAutoSuggestRequest.KEY_MAX_RESULTS, maxResults);
+        return new BranchPayload(values);
+    }
+
+    @NonNull
+    private static BranchAutoSuggestResult createResult(String... queries) {
+        List<BranchAutoSuggestion> suggestions = new ArrayList<>();
+        for (String query : queries) {
+            suggestions.add(new BranchAutoSuggestion(query));
+        }
+        return BranchAutoSuggestResult.createFromCache(suggestions, false);
+    }
+
+    @NonNull
+    private static List<String> getQueries(@NonNull BranchAutoSuggestResult result) {
+        List<String> queries = new ArrayList<>();
+        for (BranchAutoSuggestion suggestion : result.getSuggestions()) {
+            queries.add(suggestion.getQuery());
+        }
+        return queries;
+    }
+}
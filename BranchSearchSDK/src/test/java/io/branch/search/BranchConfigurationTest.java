@@ -0,0 +1,30 @@
+package io.branch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BranchConfigurationTest {
+
+    @Test
+    public void testNegativeValuesAreClamped() {
+        BranchConfiguration configuration = new BranchConfiguration()
+                .setSearchCacheTtl(-1)
+                .setAutoSuggestCacheTtl(-1000)
+                .setDeepViewPrefetchCount(-2);
+        assertEquals(0, configuration.getSearchCacheTtl());
+        assertEquals(0, configuration.getAutoSuggestCacheTtl());
+        assertEquals(0, configuration.getDeepViewPrefetchCount());
+    }
+
+    @Test
+    public void testServiceEnabledPrefetchIsOptIn() {
+        BranchConfiguration configuration = new BranchConfiguration();
+        assertFalse(configuration.isServiceEnabledPrefetchEnabled());
+        configuration.setServiceEnabledPrefetchEnabled(true);
+        assertTrue(configuration.isServiceEnabledPrefetchEnabled());
+        assertTrue(new BranchConfiguration(configuration).isServiceEnabledPrefetchEnabled());
+    }
+}
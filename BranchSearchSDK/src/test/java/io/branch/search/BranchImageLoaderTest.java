@@ -0,0 +1,40 @@
+package io.branch.search;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchImageLoaderTest {
+
+    private final OkHttpClient client = new OkHttpClient();
+
+    @Test
+    public void testOnlyApiCallsHoldPrefetchBack() {
+        Call other = client.newCall(new Request.Builder()
+                .url("https://example.com/")
+                .build());
+        Call tagged = client.newCall(new Request.Builder()
+                .url("https://example.com/")
+                .tag(Object.class, "other")
+                .build());
+        Call api = client.newCall(new Request.Builder()
+                .url(BranchSearchInterface.BRANCH_SEARCH_URL)
+                .tag(URLConnectionTask.class, URLConnectionTask.forGet(null,
+                        BranchSearchInterface.BRANCH_SEARCH_URL, null))
+                .build());
+        assertFalse(BranchImageLoader.hasApiCall(Collections.<Call>emptyList()));
+        assertFalse(BranchImageLoader.hasApiCall(Arrays.asList(other, tagged)));
+        assertTrue(BranchImageLoader.hasApiCall(Arrays.asList(other, api)));
+    }
+}
@@ -0,0 +1,45 @@
+package io.branch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BranchImageUrlResolverTest {
+
+    private static final String ICON = "https://lh3.googleusercontent.com/abc123=s90";
+
+    @Test
+    public void testReplacesOptions() {
+        assertEquals("https://lh3.googleusercontent.com/abc123=w120-h80",
+                BranchImageUrlResolver.resolve(ICON, 120, 80));
+        assertEquals("https://lh3.googleusercontent.com/abc123=w120-h80-c",
+                BranchImageUrlResolver.resolve(ICON, 120, 80, true));
+    }
+
+    @Test
+    public void testAddsOptions() {
+        assertEquals("https://lh3.ggpht.com/abc123=w120",
+                BranchImageUrlResolver.resolve("https://lh3.ggpht.com/abc123", 120, 0));
+        assertEquals("https://lh3.ggpht.com/abc123=h80",
+                BranchImageUrlResolver.resolve("https://lh3.ggpht.com/abc123", 0, 80));
+    }
+
+    @Test
+    public void testNoSizeDropsOptions() {
+        assertEquals("https://lh3.googleusercontent.com/abc123",
+                BranchImageUrlResolver.resolve(ICON, 0, 0));
+    }
+
+    @Test
+    public void testKeepsEqualsBeforeLastSegment() {
+        assertEquals("https://lh3.googleusercontent.com/a=b/abc123=w120",
+                BranchImageUrlResolver.resolve("https://lh3.googleusercontent.com/a=b/abc123", 120, 0));
+    }
+
+    @Test
+    public void testOtherHostsAreUnchanged() {
+        String url = "https://cdn.example.com/image.png=s90";
+        assertEquals(url, BranchImageUrlResolver.resolve(url, 120, 80));
+        assertEquals("not a url", BranchImageUrlResolver.resolve("not a url", 120, 80));
+    }
+}
@@ -0,0 +1,69 @@
+package io.branch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BranchLatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        BranchLatencyStats stats = new BranchLatencyHistogram().getStats();
+        assertEquals(0, stats.getSampleCount());
+        assertEquals(-1, stats.getP50Millis());
+        assertEquals(-1, stats.getP95Millis());
+        assertEquals(-1, stats.getP99Millis());
+    }
+
+    @Test
+    public void testSingleSample() {
+        BranchLatencyHistogram histogram = new BranchLatencyHistogram();
+        histogram.add(42);
+        BranchLatencyStats stats = histogram.getStats();
+        assertEquals(1, stats.getSampleCount());
+        assertEquals(42, stats.getP50Millis());
+        assertEquals(42, stats.getP95Millis());
+        assertEquals(42, stats.getP99Millis());
+    }
+
+    @Test
+    public void testPercentiles() {
+        BranchLatencyHistogram histogram = new BranchLatencyHistogram();
+        // Add 1..100 in a shuffled order.
+        for (int i = 0; i < 100; i++) {
+            histogram.add((i * 37) % 100 + 1);
+        }
+        BranchLatencyStats stats = histogram.getStats();
+        assertEquals(100, stats.getSampleCount());
+        assertEquals(50, stats.getP50Millis());
+        assertEquals(95, stats.getP95Millis());
+        assertEquals(99, stats.getP99Millis());
+    }
+
+    @Test
+    public void testOldSamplesAreDropped() {
+        BranchLatencyHistogram histogram = new BranchLatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.add(1000);
+        }
+        for (int i = 0; i < 128; i++) {
+            histogram.add(10);
+        }
+        BranchLatencyStats stats = histogram.getStats();
+        assertEquals(128, stats.getSampleCount());
+        assertEquals(10, stats.getP99Millis());
+    }
+
+    @Test
+    public void testPollLatest() {
+        BranchLatencyHistogram histogram = new BranchLatencyHistogram();
+        assertEquals(-1, histogram.pollLatest());
+        for (int i = 1; i <= 200; i++) {
+            histogram.add(i);
+        }
+        assertEquals(200, histogram.pollLatest());
+        assertEquals(-1, histogram.pollLatest());
+        histogram.add(7);
+        assertEquals(7, histogram.pollLatest());
+    }
+}
@@ -0,0 +1,51 @@
+package io.branch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BranchLatencyRecorderTest {
+
+    @Test
+    public void testRoundTripIsLatestTotalPolledOnce() {
+        record(BranchSearch.Channel.SEARCH, BranchSearchMetrics.Method.POST, 100);
+        record(BranchSearch.Channel.SEARCH, BranchSearchMetrics.Method.POST, 120);
+        assertEquals(-1, BranchLatencyRecorder.pollLastRoundTrip(BranchSearch.Channel.SEARCH,
+                BranchSearchMetrics.Method.GET));
+        assertEquals(120, BranchLatencyRecorder.pollLastRoundTrip(BranchSearch.Channel.SEARCH,
+                BranchSearchMetrics.Method.POST));
+        assertEquals(-1, BranchLatencyRecorder.pollLastRoundTrip(BranchSearch.Channel.SEARCH,
+                BranchSearchMetrics.Method.POST));
+    }
+
+    @Test
+    public void testRoundTripWithoutChannel() {
+        record(null, BranchSearchMetrics.Method.GET, 80);
+        record(BranchSearch.Channel.SEARCH, BranchSearchMetrics.Method.GET, 50);
+        assertEquals(80, BranchLatencyRecorder.pollLastRoundTrip(null,
+                BranchSearchMetrics.Method.GET));
+        assertEquals(-1, BranchLatencyRecorder.pollLastRoundTrip(null,
+                BranchSearchMetrics.Method.GET));
+        assertEquals(50, BranchLatencyRecorder.pollLastRoundTrip(BranchSearch.Channel.SEARCH,
+                BranchSearchMetrics.Method.GET));
+    }
+
+    @Test
+    public void testRoundTripComesFromHistogram() {
+        record(BranchSearch.Channel.AUTOSUGGEST, BranchSearchMetrics.Method.POST, 300);
+        BranchLatencyRecorder.record(BranchSearch.Channel.AUTOSUGGEST,
+                BranchSearchMetrics.Method.POST, BranchSearchMetrics.Phase.TTFB, 200);
+        // Only the total counts as round trip.
+        assertEquals(300, BranchLatencyRecorder.pollLastRoundTrip(BranchSearch.Channel.AUTOSUGGEST,
+                BranchSearchMetrics.Method.POST));
+        // Polling does not remove the sample from the stats.
+        assertEquals(300, BranchLatencyRecorder.getStats(BranchSearch.Channel.AUTOSUGGEST,
+                BranchSearchMetrics.Method.POST, BranchSearchMetrics.Phase.TOTAL).getP50Millis());
+    }
+
+    private static void record(BranchSearch.Channel channel,
+                               BranchSearchMetrics.Method method,
+                               long millis) {
+        BranchLatencyRecorder.record(channel, method, BranchSearchMetrics.Phase.TOTAL, millis);
+    }
+}
@@ -0,0 +1,90 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchOfflineFallbackTest {
+
+    private static final BranchSearchError OFFLINE
+            = new BranchSearchError(BranchSearchError.ERR_CODE.BRANCH_NO_CONNECTIVITY_ERR);
+
+    private final BranchResultCache<BranchSearchResult> cache
+            = new BranchResultCache<>(10, 60000, 0);
+
+    @Test
+    public void testSameQuery() throws JSONException {
+        BranchSearchResult p = put("p");
+        assertSame(p, offline("p", OFFLINE));
+    }
+
+    @Test
+    public void testLongestPrefix() throws JSONException {
+        put("piz");
+        BranchSearchResult pizz = put("pizz");
+        assertSame(pizz, offline("pizza", OFFLINE));
+    }
+
+    @Test
+    public void testShortPrefixIsNotUsed() throws JSONException {
+        put("p");
+        put("pi");
+        assertNull(offline("pizza", OFFLINE));
+        // Three characters, but less than half of the query.
+        put("piz");
+        assertNull(offline("pizzeria", OFFLINE));
+    }
+
+    @Test
+    public void testOnlyForConnectivityErrors() throws JSONException {
+        put("pizza");
+        BranchSearchError error = new BranchSearchError(BranchSearchError.ERR_CODE.INTERNAL_SERVER_ERR);
+        assertNull(offline("pizza", error));
+    }
+
+    @Test
+    public void testOnlyForTheSameUrl() throws JSONException {
+        BranchConfiguration first = new BranchConfiguration().setUrl("https://first.example.com/");
+        BranchConfiguration second = new BranchConfiguration().setUrl("https://second.example.com/");
+        BranchSearchResult pizza = put(first.getUrl(), "pizza");
+        assertSame(pizza, BranchSearchInterface.getOfflineResult(cache, first.getUrl(),
+                createPayload("pizza"), OFFLINE));
+        assertNull(BranchSearchInterface.getOfflineResult(cache, second.getUrl(),
+                createPayload("pizza"), OFFLINE));
+        assertNull(BranchSearchInterface.getOfflineResult(cache, second.getUrl(),
+                createPayload("pizzas"), OFFLINE));
+    }
+
+    @Nullable
+    private BranchSearchResult offline(@NonNull String query, @NonNull BranchSearchError error)
+            throws JSONException {
+        return BranchSearchInterface.getOfflineResult(cache, BranchSearchInterface.BRANCH_SEARCH_URL,
+                createPayload(query), error);
+    }
+
+    @NonNull
+    private BranchSearchResult put(@NonNull String query) throws JSONException {
+        return put(BranchSearchInterface.BRANCH_SEARCH_URL, query);
+    }
+
+    @NonNull
+    private BranchSearchResult put(@NonNull String url, @NonNull String query) throws JSONException {
+        BranchSearchResult result = BranchSearchResult.createEmpty(BranchSearchRequest.create(query));
+        cache.put(BranchRequestKey.createSearchCacheKey(url, createPayload(query)), result);
+        return result;
+    }
+
+    @NonNull
+    private static BranchPayload createPayload(@NonNull String query) throws JSONException {
+        return new BranchPayload(new JSONObject().put(BranchSearchRequest.KEY_USER_QUERY, query));
+    }
+}
@@ -0,0 +1,79 @@
+package io.branch.search;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchPayloadTemplateTest {
+
+    private static final String CARRIER = BranchDeviceInfo.JSONKey.Carrier.toString();
+
+    private BranchDeviceInfo info;
+    private BranchConfiguration configuration;
+
+    @Before
+    public void setUp() {
+        info = new BranchDeviceInfo();
+        info.sync(RuntimeEnvironment.application);
+        configuration = synced(new BranchConfiguration().setBranchKey("key_live_test"));
+    }
+
+    @Test
+    public void testSameSourcesReuseTemplate() {
+        BranchPayloadTemplate template = BranchPayloadTemplate.get(info, configuration);
+        assertSame(template, BranchPayloadTemplate.get(info, configuration));
+    }
+
+    @Test
+    public void testSyncWithoutChangesKeepsSnapshot() {
+        BranchDeviceInfo.Snapshot snapshot = info.getSnapshot();
+        BranchPayloadTemplate template = BranchPayloadTemplate.get(info, configuration);
+        info.sync(RuntimeEnvironment.application);
+        assertSame(snapshot, info.getSnapshot());
+        assertSame(template, BranchPayloadTemplate.get(info, configuration));
+    }
+
+    @Test
+    public void testSyncPublishesNewSnapshot() {
+        BranchDeviceInfo.Snapshot snapshot = info.getSnapshot();
+        BranchPayloadTemplate template = BranchPayloadTemplate.get(info, configuration);
+        Object carrier = template.opt(CARRIER);
+
+        TelephonyManager manager = (TelephonyManager) RuntimeEnvironment.application
+                .getSystemService(Context.TELEPHONY_SERVICE);
+        shadowOf(manager).setNetworkOperatorName("Other carrier");
+        info.sync(RuntimeEnvironment.application);
+
+        // The published snapshot and template never change.
+        assertNotSame(snapshot, info.getSnapshot());
+        assertEquals(carrier, template.opt(CARRIER));
+        BranchPayloadTemplate fresh = BranchPayloadTemplate.get(info, configuration);
+        assertNotSame(template, fresh);
+        assertEquals("Other carrier", fresh.opt(CARRIER));
+    }
+
+    @Test
+    public void testNewConfigurationBuildsTemplate() {
+        BranchPayloadTemplate template = BranchPayloadTemplate.get(info, configuration);
+        BranchConfiguration other = synced(new BranchConfiguration().setBranchKey("key_live_other"));
+        BranchPayloadTemplate fresh = BranchPayloadTemplate.get(info, other);
+        assertNotSame(template, fresh);
+        assertEquals("key_live_other", fresh.opt(BranchConfiguration.JSONKey.BranchKey.toString()));
+    }
+
+    // So that get() does not start a refresh, which would publish another template.
+    private static BranchConfiguration synced(BranchConfiguration configuration) {
+        return configuration.fetchAdTracking(RuntimeEnvironment.application);
+    }
+}
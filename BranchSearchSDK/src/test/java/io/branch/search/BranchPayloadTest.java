@@ -0,0 +1,45 @@
+package io.branch.search;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchPayloadTest {
+
+    @Test
+    public void testValuesAreNotCopied() {
+        JSONObject values = new JSONObject();
+        BranchPayload payload = new BranchPayload(values);
+        assertSame(values, payload.getValues());
+        assertNull(payload.getTemplate());
+    }
+
+    @Test
+    public void testAccessorsReadRequestValues() throws JSONException {
+        JSONObject values = new JSONObject()
+                .put(BranchConfiguration.JSONKey.BranchKey.toString(), "key_live_test")
+                .put(BranchDeviceInfo.JSONKey.Locale.toString(), "en_US")
+                .put(BranchConfiguration.JSONKey.Country.toString(), "US");
+        BranchPayload payload = new BranchPayload(values);
+        assertEquals("key_live_test", payload.getBranchKey());
+        assertEquals("en_US", payload.getLocale());
+        assertEquals("US", payload.getCountry());
+    }
+
+    @Test
+    public void testMissingValuesAreEmpty() throws JSONException {
+        JSONObject values = new JSONObject()
+                .put(BranchConfiguration.JSONKey.Country.toString(), JSONObject.NULL);
+        BranchPayload payload = new BranchPayload(values);
+        assertEquals("", payload.getBranchKey());
+        assertEquals("", payload.getLocale());
+        assertEquals("", payload.getCountry());
+    }
+}
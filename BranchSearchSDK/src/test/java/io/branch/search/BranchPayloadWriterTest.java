@@ -0,0 +1,184 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchPayloadWriterTest {
+
+    private static final String LOCALE = BranchDeviceInfo.JSONKey.Locale.toString();
+
+    @Test
+    public void testWritesValuesWithoutTemplate() throws Exception {
+        JSONObject values = new JSONObject()
+                .put("user_query", "pizza")
+                .put("extra_data", new JSONObject().put("a", new JSONArray().put(1).put("b")));
+        String json = write(new BranchPayload(values));
+        assertEquals(values.toString(), json);
+    }
+
+    @Test
+    public void testSplicesTemplate() throws Exception {
+        BranchPayloadTemplate template = createTemplate();
+        JSONObject values = new JSONObject()
+                .put("user_query", "pizza")
+                .put(LOCALE, "it-IT");
+        String json = write(new BranchPayload(values, template));
+        assertTrue(json.startsWith("{" + template.getFragment().utf8() + ",\"user_query\""));
+
+        JSONObject parsed = new JSONObject(json);
+        assertEquals("pizza", parsed.getString("user_query"));
+        assertEquals(template.opt(BranchConfiguration.JSONKey.BranchKey.toString()),
+                parsed.getString(BranchConfiguration.JSONKey.BranchKey.toString()));
+        // Request values come last, so they win over the template ones.
+        assertEquals("it-IT", parsed.getString(LOCALE));
+    }
+
+    @Test
+    public void testSplicesTemplateWithoutValues() throws Exception {
+        BranchPayloadTemplate template = createTemplate();
+        String json = write(new BranchPayload(new JSONObject(), template));
+        assertEquals("{" + template.getFragment().utf8() + "}", json);
+        assertFalse(json.contains(",}"));
+        new JSONObject(json);
+    }
+
+    @Test
+    public void testNumberFormatting() throws Exception {
+        JSONObject values = new JSONObject()
+                .put("double", 1.0)
+                .put("fraction", 2.5)
+                .put("float", (Object) 3.0f)
+                .put("long", 4000000000L)
+                .put("int", 5)
+                .put("negative", -6.0)
+                .put("flag", true);
+        String json = write(new BranchPayload(values));
+        assertEquals(values.toString(), json);
+        assertTrue(json.contains("\"double\":1,"));
+        assertTrue(json.contains("\"fraction\":2.5,"));
+    }
+
+    @Test
+    public void testWritesUtf8() throws Exception {
+        // Latin, CJK and a surrogate pair.
+        JSONObject values = new JSONObject().put("user_query", "caf\u00e9 \u5bff\u53f8 \ud83c\udf55");
+        Buffer buffer = new Buffer();
+        BranchPayloadWriter.write(new BranchPayload(values), buffer);
+        assertEquals(values.toString(), buffer.readUtf8());
+    }
+
+    @Test
+    public void testBase64ValueMatchesTrimmedString() throws IOException {
+        // Long enough for Base64.DEFAULT to break lines.
+        byte[] bytes = new byte[200];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        String expected = Base64.encodeToString(bytes, Base64.DEFAULT).trim();
+        assertTrue(expected.contains("\n"));
+
+        Buffer buffer = new Buffer();
+        Base64OutputStream stream = new Base64OutputStream(
+                new BranchPayloadWriter.Base64ValueStream(buffer), Base64.DEFAULT);
+        stream.write(bytes);
+        stream.close();
+        // Like the envelope used to be written, with JsonWriter, which does not escape slashes.
+        StringWriter envelope = new StringWriter();
+        JsonWriter writer = new JsonWriter(envelope);
+        writer.beginObject().name("data").value(expected).endObject().close();
+        assertEquals(envelope.toString(), "{\"data\":\"" + buffer.readUtf8() + "\"}");
+    }
+
+    @Test
+    public void testSinkWriterSplicesAfterFirstChar() throws IOException {
+        Buffer buffer = new Buffer();
+        BranchPayloadWriter.SinkWriter writer = new BranchPayloadWriter.SinkWriter(
+                buffer, ByteString.encodeUtf8("\"a\":1"), true);
+        writer.write("{\"b\":2}");
+        assertEquals("{\"a\":1,\"b\":2}", buffer.readUtf8());
+    }
+
+    @Test
+    public void testSinkWriterStringsMatchChars() throws IOException {
+        // A pair split across writes, a broken pair, and a lone low surrogate.
+        String[] parts = { "caf\u00e9 \ud83c", "\udf55 \ud83c", "a\udf55", "\u5bff" };
+        Buffer strings = new Buffer();
+        Buffer chars = new Buffer();
+        BranchPayloadWriter.SinkWriter stringWriter = new BranchPayloadWriter.SinkWriter(strings, null, false);
+        BranchPayloadWriter.SinkWriter charWriter = new BranchPayloadWriter.SinkWriter(chars, null, false);
+        for (String part : parts) {
+            stringWriter.write(part);
+            for (int i = 0; i < part.length(); i++) {
+                charWriter.write(part.charAt(i));
+            }
+        }
+        assertEquals(chars.readByteString(), strings.readByteString());
+        // A whole pair in one write.
+        stringWriter.write("\ud83c\udf55");
+        assertEquals("\ud83c\udf55", strings.readUtf8());
+    }
+
+    @Test
+    public void testWritesEncryptedEnvelope() throws Exception {
+        String key = "0123456789abcdef";
+        String iv = "fedcba9876543210";
+        JSONObject values = new JSONObject()
+                .put("user_query", "caf\u00e9 \ud83c\udf55")
+                // Long enough for Base64.DEFAULT to break lines.
+                .put("extra_data", new String(new char[200]).replace('\0', 'x'));
+        BranchPayload payload = new BranchPayload(values, createTemplate());
+
+        Buffer buffer = new Buffer();
+        OutputStream cipherStream = Branchcryption.encrypt(
+                new BranchPayloadWriter.Base64ValueStream(buffer), key, iv);
+        BranchPayloadWriter.writeEnvelope(payload, iv, buffer, cipherStream);
+
+        JSONObject envelope = new JSONObject(buffer.readUtf8());
+        assertEquals(2, envelope.length());
+        assertEquals(iv, envelope.getString(Branchcryption.jsonKeyIV));
+        String data = envelope.getString(Branchcryption.jsonKeyData);
+        assertTrue(data.contains("\n"));
+        assertFalse(data.endsWith("\n"));
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key.getBytes("UTF-8"), "AES"),
+                new IvParameterSpec(iv.getBytes("UTF-8")));
+        byte[] plain = cipher.doFinal(Base64.decode(data, Base64.DEFAULT));
+        assertEquals(write(payload), new String(plain, "UTF-8"));
+    }
+
+    @NonNull
+    private static String write(@NonNull BranchPayload payload) throws IOException {
+        Buffer buffer = new Buffer();
+        BranchPayloadWriter.write(payload, buffer);
+        return buffer.readUtf8();
+    }
+
+    @NonNull
+    private static BranchPayloadTemplate createTemplate() {
+        BranchConfiguration configuration = new BranchConfiguration().setBranchKey("key_live_test");
+        return BranchPayloadTemplate.get(new BranchDeviceInfo(), configuration);
+    }
+}
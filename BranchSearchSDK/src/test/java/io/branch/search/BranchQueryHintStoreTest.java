@@ -0,0 +1,150 @@
+package io.branch.search;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchQueryHintStoreTest {
+
+    private static final String KEY = "key_live_test";
+    private static final long MAX_AGE = 60000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void testEmpty() {
+        BranchQueryHintStore store = new BranchQueryHintStore(context, MAX_AGE);
+        store.load();
+        assertNull(store.get(KEY, false));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza", "coffee", "p\u00e2tisserie"));
+
+        // A new store, like on the next start, reads the file.
+        BranchQueryHintResult result = load(MAX_AGE).get(KEY, true);
+        assertEquals(Arrays.asList("pizza", "coffee", "p\u00e2tisserie"), getQueries(result));
+        assertTrue(result.isFromCache());
+        assertTrue(result.isStale());
+    }
+
+    @Test
+    public void testGetDoesNotReadFile() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza"));
+        assertNull(new BranchQueryHintStore(context, MAX_AGE).get(KEY, false));
+    }
+
+    @Test
+    public void testLoadDoesNotReplaceSavedHints() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza"));
+        BranchQueryHintStore store = new BranchQueryHintStore(context, MAX_AGE);
+        store.save(KEY, createResult("coffee"));
+        store.load();
+        assertEquals(Arrays.asList("coffee"), getQueries(store.get(KEY, false)));
+    }
+
+    @Test
+    public void testFileFormat() throws IOException {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza", "coffee"));
+        DataInputStream in = new DataInputStream(new FileInputStream(
+                new File(context.getFilesDir(), "branch_query_hints")));
+        try {
+            assertEquals(1, in.readInt());
+            long savedAt = in.readLong();
+            assertTrue(savedAt > 0 && savedAt <= System.currentTimeMillis());
+            assertEquals(KEY, in.readUTF());
+            assertEquals(2, in.readInt());
+            assertEquals("pizza", in.readUTF());
+            assertEquals("coffee", in.readUTF());
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testOtherKey() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza"));
+        assertNull(load(MAX_AGE).get("key_live_other", false));
+    }
+
+    @Test
+    public void testKeyChange() {
+        BranchQueryHintStore store = new BranchQueryHintStore(context, MAX_AGE);
+        store.save(KEY, createResult("pizza"));
+        assertNull(store.get("key_live_other", false));
+
+        store.save("key_live_other", createResult("coffee"));
+        assertNull(store.get(KEY, false));
+        assertEquals(Arrays.asList("coffee"), getQueries(store.get("key_live_other", false)));
+    }
+
+    @Test
+    public void testMaxAge() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza"));
+        assertNull(load(-1).get(KEY, false));
+    }
+
+    @Test
+    public void testCorruptedFile() throws IOException {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza", "coffee"));
+        File file = new File(context.getFilesDir(), "branch_query_hints");
+        long length = file.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.getChannel().truncate(length - 3);
+        out.close();
+        assertNull(load(MAX_AGE).get(KEY, false));
+    }
+
+    @Test
+    public void testNoTemporaryFileIsLeft() {
+        new BranchQueryHintStore(context, MAX_AGE).save(KEY, createResult("pizza"));
+        assertFalse(new File(context.getFilesDir(), "branch_query_hints.tmp").exists());
+    }
+
+    private BranchQueryHintStore load(long maxAgeMillis) {
+        BranchQueryHintStore store = new BranchQueryHintStore(context, maxAgeMillis);
+        store.load();
+        return store;
+    }
+
+    private static BranchQueryHintResult createResult(String... queries) {
+        List<BranchQueryHint> hints = new java.util.ArrayList<>();
+        for (String query : queries) {
+            hints.add(new BranchQueryHint(query));
+        }
+        return BranchQueryHintResult.createFromCache(hints, false);
+    }
+
+    private static List<String> getQueries(BranchQueryHintResult result) {
+        List<String> queries = new java.util.ArrayList<>();
+        for (BranchQueryHint hint : result.getHints()) {
+            queries.add(hint.getQuery());
+        }
+        return queries;
+    }
+}
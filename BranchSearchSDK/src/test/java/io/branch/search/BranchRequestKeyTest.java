@@ -0,0 +1,168 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchRequestKeyTest {
+
+    private static final String URL = BranchSearchInterface.BRANCH_SEARCH_URL;
+    private static final String AUTOSUGGEST_URL = BranchSearchInterface.BRANCH_AUTOSUGGEST_URL;
+
+    @Test
+    public void testKeyDoesNotDependOnKeyOrder() throws JSONException {
+        JSONObject first = new JSONObject()
+                .put("user_query", "pizza")
+                .put("limit_app_results", 5)
+                .put("extra_data", new JSONObject().put("a", 1).put("b", 2));
+        JSONObject second = new JSONObject()
+                .put("extra_data", new JSONObject().put("b", 2).put("a", 1))
+                .put("limit_app_results", 5)
+                .put("user_query", "pizza");
+        assertEquals(create(URL, first), create(URL, second));
+    }
+
+    @Test
+    public void testKeyIgnoresTimestampAndRoundTrip() throws JSONException {
+        JSONObject first = new JSONObject()
+                .put("user_query", "pizza")
+                .put("utc_timestamp", 1000L)
+                .put("lr_rtt", 200L);
+        JSONObject second = new JSONObject()
+                .put("user_query", "pizza")
+                .put("utc_timestamp", 2000L);
+        assertEquals(create(URL, first), create(URL, second));
+    }
+
+    @Test
+    public void testKeyKeepsNestedTimestamp() throws JSONException {
+        // Only the top level values are ignored: the extras are part of the request.
+        JSONObject first = new JSONObject()
+                .put("extra_data", new JSONObject().put("utc_timestamp", 1000L));
+        JSONObject second = new JSONObject()
+                .put("extra_data", new JSONObject().put("utc_timestamp", 2000L));
+        assertNotEquals(create(URL, first), create(URL, second));
+    }
+
+    @Test
+    public void testKeyDependsOnUrlAndValues() throws JSONException {
+        JSONObject pizza = new JSONObject().put("user_query", "pizza");
+        JSONObject pasta = new JSONObject().put("user_query", "pasta");
+        assertNotEquals(create(URL, pizza), create(URL, pasta));
+        assertNotEquals(create(URL, pizza),
+                create(BranchSearchInterface.BRANCH_AUTOSUGGEST_URL, pizza));
+        assertNotEquals(create(URL, pizza), create(URL, null));
+    }
+
+    @Test
+    public void testKeyTellsValueTypesApart() throws JSONException {
+        JSONObject string = new JSONObject().put("limit_app_results", "5");
+        JSONObject number = new JSONObject().put("limit_app_results", 5);
+        assertNotEquals(create(URL, string), create(URL, number));
+    }
+
+    @Test
+    public void testNormalizeQuery() {
+        assertEquals("pizza near me", BranchRequestKey.normalizeQuery("  Pizza \t near  ME "));
+        assertEquals("", BranchRequestKey.normalizeQuery("   "));
+    }
+
+    @Test
+    public void testSearchCacheKeyNormalizesQueryAndLocation() throws JSONException {
+        JSONObject first = new JSONObject()
+                .put(BranchSearchRequest.KEY_USER_QUERY, "Pizza ")
+                .put(BranchDeviceInfo.JSONKey.Latitude.toString(), 45.4641)
+                .put(BranchDeviceInfo.JSONKey.Longitude.toString(), 9.1919)
+                .put(BranchDiscoveryRequest.KEY_TIMESTAMP, 1000L);
+        JSONObject second = new JSONObject()
+                .put(BranchSearchRequest.KEY_USER_QUERY, "pizza")
+                .put(BranchDeviceInfo.JSONKey.Latitude.toString(), 45.4612)
+                .put(BranchDeviceInfo.JSONKey.Longitude.toString(), 9.1899)
+                .put(BranchDiscoveryRequest.KEY_TIMESTAMP, 2000L);
+        assertEquals(searchKey(URL, first), searchKey(URL, second));
+
+        // About 2km away.
+        second.put(BranchDeviceInfo.JSONKey.Latitude.toString(), 45.48);
+        assertNotEquals(searchKey(URL, first), searchKey(URL, second));
+    }
+
+    @Test
+    public void testSearchCacheKeyDependsOnOptions() throws JSONException {
+        JSONObject payload = new JSONObject().put(BranchSearchRequest.KEY_USER_QUERY, "pizza");
+        String key = searchKey(URL, payload);
+        payload.put(BranchSearchRequest.KEY_LIMIT_APP_RESULTS, 3);
+        assertNotEquals(key, searchKey(URL, payload));
+        key = searchKey(URL, payload);
+        payload.put(BranchDiscoveryRequest.KEY_EXTRA, new JSONObject().put("a", 1));
+        assertNotEquals(key, searchKey(URL, payload));
+    }
+
+    @Test
+    public void testSearchCacheKeyForPrefix() throws JSONException {
+        JSONObject pizza = new JSONObject().put(BranchSearchRequest.KEY_USER_QUERY, "pizza");
+        JSONObject piz = new JSONObject().put(BranchSearchRequest.KEY_USER_QUERY, "piz");
+        assertEquals(searchKey(URL, piz), searchKey(URL, pizza, "piz"));
+    }
+
+    @Test
+    public void testAutoSuggestCacheContextIgnoresQuery() throws JSONException {
+        JSONObject first = new JSONObject()
+                .put(BranchAutoSuggestRequest.KEY_USER_QUERY, "piz")
+                .put(BranchAutoSuggestRequest.KEY_MAX_RESULTS, 10);
+        JSONObject second = new JSONObject()
+                .put(BranchAutoSuggestRequest.KEY_USER_QUERY, "pizza")
+                .put(BranchAutoSuggestRequest.KEY_MAX_RESULTS, 10);
+        assertEquals(autoSuggestContext(AUTOSUGGEST_URL, first),
+                autoSuggestContext(AUTOSUGGEST_URL, second));
+        second.put(BranchAutoSuggestRequest.KEY_MAX_RESULTS, 5);
+        assertNotEquals(autoSuggestContext(AUTOSUGGEST_URL, first),
+                autoSuggestContext(AUTOSUGGEST_URL, second));
+    }
+
+    @Test
+    public void testCacheKeysDependOnUrlAndBranchKey() throws JSONException {
+        String branchKey = BranchConfiguration.JSONKey.BranchKey.toString();
+        JSONObject first = new JSONObject()
+                .put(BranchSearchRequest.KEY_USER_QUERY, "pizza")
+                .put(branchKey, "key_live_first");
+        JSONObject second = new JSONObject()
+                .put(BranchSearchRequest.KEY_USER_QUERY, "pizza")
+                .put(branchKey, "key_live_second");
+        assertNotEquals(searchKey(URL, first), searchKey(URL, second));
+        assertNotEquals(searchKey(URL, first), searchKey(AUTOSUGGEST_URL, first));
+        assertNotEquals(autoSuggestContext(AUTOSUGGEST_URL, first),
+                autoSuggestContext(AUTOSUGGEST_URL, second));
+        assertNotEquals(autoSuggestContext(AUTOSUGGEST_URL, first), autoSuggestContext(URL, first));
+    }
+
+    @NonNull
+    private static String create(@NonNull String url, @Nullable JSONObject values) {
+        return BranchRequestKey.create(url, values == null ? null : new BranchPayload(values));
+    }
+
+    @NonNull
+    private static String searchKey(@NonNull String url, @NonNull JSONObject values) {
+        return BranchRequestKey.createSearchCacheKey(url, new BranchPayload(values));
+    }
+
+    @NonNull
+    private static String searchKey(@NonNull String url,
+                                    @NonNull JSONObject values,
+                                    @NonNull String query) {
+        return BranchRequestKey.createSearchCacheKey(url, new BranchPayload(values), query);
+    }
+
+    @NonNull
+    private static String autoSuggestContext(@NonNull String url, @NonNull JSONObject values) {
+        return BranchRequestKey.createAutoSuggestCacheContext(url, new BranchPayload(values));
+    }
+}
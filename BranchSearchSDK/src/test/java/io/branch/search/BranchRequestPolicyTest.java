@@ -0,0 +1,50 @@
+package io.branch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BranchRequestPolicyTest {
+
+    @Test
+    public void testImmediate() {
+        BranchRequestPolicy policy = BranchRequestPolicy.immediate();
+        assertEquals(BranchRequestPolicy.Mode.IMMEDIATE, policy.getMode());
+        assertEquals(0, policy.getIntervalMillis());
+    }
+
+    @Test
+    public void testWindows() {
+        BranchRequestPolicy debounce = BranchRequestPolicy.debounce(300);
+        assertEquals(BranchRequestPolicy.Mode.DEBOUNCE, debounce.getMode());
+        assertEquals(300, debounce.getIntervalMillis());
+
+        BranchRequestPolicy throttle = BranchRequestPolicy.throttle(500);
+        assertEquals(BranchRequestPolicy.Mode.THROTTLE, throttle.getMode());
+        assertEquals(500, throttle.getIntervalMillis());
+
+        BranchRequestPolicy both = BranchRequestPolicy.leadingAndTrailing(200);
+        assertEquals(BranchRequestPolicy.Mode.LEADING_AND_TRAILING, both.getMode());
+        assertEquals(200, both.getIntervalMillis());
+    }
+
+    @Test
+    public void testEmptyWindowIsImmediate() {
+        assertSame(BranchRequestPolicy.immediate(), BranchRequestPolicy.debounce(0));
+        assertSame(BranchRequestPolicy.immediate(), BranchRequestPolicy.throttle(-1));
+        assertSame(BranchRequestPolicy.immediate(), BranchRequestPolicy.leadingAndTrailing(0));
+    }
+
+    @Test
+    public void testConfigurationDefault() {
+        BranchConfiguration configuration = new BranchConfiguration();
+        assertSame(BranchRequestPolicy.immediate(),
+                configuration.getRequestPolicy(BranchSearch.Channel.SEARCH));
+        BranchRequestPolicy debounce = BranchRequestPolicy.debounce(300);
+        configuration.setRequestPolicy(BranchSearch.Channel.AUTOSUGGEST, debounce);
+        assertSame(debounce, configuration.getRequestPolicy(BranchSearch.Channel.AUTOSUGGEST));
+        assertSame(BranchRequestPolicy.immediate(),
+                configuration.getRequestPolicy(BranchSearch.Channel.SEARCH));
+    }
+}
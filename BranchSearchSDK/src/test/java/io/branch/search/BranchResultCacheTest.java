@@ -0,0 +1,96 @@
+package io.branch.search;
+
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Robolectric's {@link SystemClock#sleep(long)} moves the clock forward without waiting.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BranchResultCacheTest {
+
+    private static final long TTL = 1000;
+    private static final long STALE = 500;
+
+    @Test
+    public void testFreshEntry() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        assertEquals("value", cache.peek("key"));
+        assertNull(cache.getStale("key"));
+        assertEquals("value", cache.getAny("key"));
+    }
+
+    @Test
+    public void testStaleEntry() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "value");
+        SystemClock.sleep(TTL + 1);
+        assertNull(cache.get("key"));
+        assertEquals("value", cache.getStale("key"));
+        assertEquals("value", cache.getAny("key"));
+    }
+
+    @Test
+    public void testExpiredEntryIsOnlyReturnedByGetAny() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "value");
+        SystemClock.sleep(TTL + STALE + 1);
+        assertNull(cache.get("key"));
+        assertNull(cache.getStale("key"));
+        assertEquals("value", cache.getAny("key"));
+    }
+
+    @Test
+    public void testPutResetsAge() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "old");
+        SystemClock.sleep(TTL + 1);
+        cache.put("key", "new");
+        assertEquals("new", cache.get("key"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        BranchResultCache<String> cache = new BranchResultCache<>(2, TTL, STALE);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertEquals("1", cache.getAny("a"));
+        assertNull(cache.getAny("b"));
+        assertEquals("3", cache.getAny("c"));
+    }
+
+    @Test
+    public void testHitAndMissCounts() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "value");
+        cache.get("key");
+        cache.get("other");
+        cache.peek("other");
+        cache.getStale("other");
+        cache.getAny("other");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.recordHit();
+        cache.recordMiss();
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testClear() {
+        BranchResultCache<String> cache = new BranchResultCache<>(10, TTL, STALE);
+        cache.put("key", "value");
+        cache.clear();
+        assertNull(cache.getAny("key"));
+    }
+}
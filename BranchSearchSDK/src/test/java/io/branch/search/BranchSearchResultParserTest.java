@@ -0,0 +1,181 @@
+package io.branch.search;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the JSONObject and the streaming parsers of search results on the same responses.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BranchSearchResultParserTest {
+
+    private final BranchSearchRequest request = BranchSearchRequest.create("pizza");
+
+    @Before
+    public void setUp() {
+        assertNotNull(BranchSearch.init(RuntimeEnvironment.application,
+                new BranchConfiguration().setBranchKey("key_live_test")));
+    }
+
+    @Test
+    public void testSuccessfulResponse() throws Exception {
+        String json = readResource("search_response.json");
+        BranchSearchResult tree = BranchSearchResult.createFromJson(request, new JSONObject(json));
+        BranchSearchResult stream = parseStreaming(json);
+
+        assertTrue(tree.isSuccessful());
+        assertTrue(stream.isSuccessful());
+        assertEquals("pizza", stream.getCorrectedQuery());
+        assertEquals(2, tree.getResults().size());
+        assertEquals(1, tree.getResults().get(0).getDeepLinks().size());
+        assertSameResult(tree, stream);
+    }
+
+    @Test
+    public void testUnsuccessfulResponseKeepsCorrectedQuery() throws Exception {
+        JSONObject response = new JSONObject(readResource("search_response.json"))
+                .put("success", false)
+                .put("search_query_string", "piza");
+        BranchSearchResult tree = BranchSearchResult.createFromJson(request, response);
+        BranchSearchResult stream = parseStreaming(response.toString());
+
+        assertFalse(tree.isSuccessful());
+        assertFalse(stream.isSuccessful());
+        assertEquals("piza", stream.getCorrectedQuery());
+        assertTrue(stream.getResults().isEmpty());
+        assertSameResult(tree, stream);
+    }
+
+    @Test
+    public void testSuccessAsString() throws Exception {
+        JSONObject response = new JSONObject(readResource("search_response.json"))
+                .put("success", "true");
+        assertSameResult(BranchSearchResult.createFromJson(request, response),
+                parseStreaming(response.toString()));
+    }
+
+    @Test
+    public void testMissingFields() throws Exception {
+        String json = "{\"success\":true}";
+        BranchSearchResult tree = BranchSearchResult.createFromJson(request, new JSONObject(json));
+        BranchSearchResult stream = parseStreaming(json);
+        assertTrue(stream.isSuccessful());
+        assertNull(stream.getCorrectedQuery());
+        assertSameResult(tree, stream);
+    }
+
+    @Test
+    public void testResultsBeforeSuccess() throws Exception {
+        String json = "{\"results\":" + new JSONObject(readResource("search_response.json"))
+                .getJSONArray("results") + ",\"success\":true}";
+        BranchSearchResult stream = parseStreaming(json);
+        assertEquals(2, stream.getResults().size());
+        assertSameResult(BranchSearchResult.createFromJson(request, new JSONObject(json)), stream);
+    }
+
+    @Test
+    public void testUnsuccessfulResponseDoesNotCheckLinks() throws Exception {
+        CountingShortcutHandler handler = new CountingShortcutHandler();
+        BranchSearch.getInstance().setBranchConfiguration(new BranchConfiguration()
+                .setBranchKey("key_live_test")
+                .setShortcutHandler(handler));
+        String results = "[{\"app_store_id\":\"com.example.pizza\",\"deep_links\":"
+                + "[{\"android_shortcut_id\":\"menu\",\"web_link\":\"https://example.com\"}]}]";
+
+        // Success comes last, so results are read before we know.
+        parseStreaming("{\"results\":" + results + ",\"success\":false}");
+        assertEquals(0, handler.validations);
+        // Success comes first, so results are skipped.
+        parseStreaming("{\"success\":false,\"results\":" + results + "}");
+        assertEquals(0, handler.validations);
+
+        BranchSearchResult stream = parseStreaming("{\"results\":" + results + ",\"success\":true}");
+        assertEquals(1, handler.validations);
+        assertEquals("menu", stream.getResults().get(0).getDeepLinks().get(0).getAndroidShortcutId());
+    }
+
+    private void assertSameResult(@NonNull BranchSearchResult expected,
+                                  @NonNull BranchSearchResult actual) {
+        assertEquals(expected.isSuccessful(), actual.isSuccessful());
+        assertEquals(expected.getCorrectedQuery(), actual.getCorrectedQuery());
+        assertTrue(expected.hasSameContent(actual));
+        for (int i = 0; i < expected.getResults().size(); i++) {
+            BranchAppResult expectedApp = expected.getResults().get(i);
+            BranchAppResult actualApp = actual.getResults().get(i);
+            assertEquals(expectedApp.getRankingHint(), actualApp.getRankingHint());
+            assertEquals(expectedApp.getScore(), actualApp.getScore(), 0);
+            for (int j = 0; j < expectedApp.getDeepLinks().size(); j++) {
+                assertSameLink(expectedApp.getDeepLinks().get(j), actualApp.getDeepLinks().get(j));
+            }
+        }
+    }
+
+    private static void assertSameLink(@NonNull BranchLinkResult expected,
+                                       @NonNull BranchLinkResult actual) {
+        assertEquals(expected.getAppName(), actual.getAppName());
+        assertEquals(expected.getAppIconUrl(), actual.getAppIconUrl());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getScore(), actual.getScore(), 0);
+        assertEquals(expected.getMetadata().toString(), actual.getMetadata().toString());
+        assertEquals(expected.getRankingHint(), actual.getRankingHint());
+        assertEquals(expected.getRoutingMode(), actual.getRoutingMode());
+        assertEquals(expected.getUriScheme(), actual.getUriScheme());
+        assertEquals(expected.getWebLink(), actual.getWebLink());
+        assertEquals(expected.getDestinationPackageName(), actual.getDestinationPackageName());
+        assertEquals(expected.getClickTrackingUrl(), actual.getClickTrackingUrl());
+        assertEquals(expected.getAndroidShortcutId(), actual.getAndroidShortcutId());
+        assertEquals(expected.getIconCategory(), actual.getIconCategory());
+        assertEquals(expected.deepview_extra_text, actual.deepview_extra_text);
+    }
+
+    private static class CountingShortcutHandler implements IBranchShortcutHandler {
+        private int validations;
+
+        @Override
+        public boolean validateShortcut(@NonNull Context context,
+                                        @NonNull String id,
+                                        @NonNull String packageName) {
+            validations++;
+            return true;
+        }
+
+        @Override
+        public boolean launchShortcut(@NonNull Context context,
+                                      @NonNull String id,
+                                      @NonNull String packageName) {
+            return false;
+        }
+    }
+
+    @NonNull
+    private BranchSearchResult parseStreaming(@NonNull String json) throws IOException {
+        return BranchSearchResult.createFromJson(request, new JsonReader(new StringReader(json)));
+    }
+
+    @NonNull
+    private static String readResource(@NonNull String name) {
+        InputStream stream = BranchSearchResultParserTest.class.getClassLoader()
+                .getResourceAsStream(name);
+        Scanner scanner = new Scanner(stream, "UTF-8").useDelimiter("\\A");
+        return scanner.next();
+    }
+}
@@ -0,0 +1,88 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BranchSearchTest {
+
+    private BranchSearch search;
+
+    @Before
+    public void setUp() {
+        search = BranchSearch.init(RuntimeEnvironment.application,
+                new BranchConfiguration().setBranchKey("key_live_test"));
+        assertNotNull(search);
+    }
+
+    @Test
+    public void testGetBranchConfigurationReturnsCopy() {
+        BranchConfiguration copy = search.getBranchConfiguration();
+        assertNotSame(search.getConfiguration(), copy);
+        assertEquals("key_live_test", copy.getBranchKey());
+
+        copy.setBranchKey("key_live_other");
+        assertEquals("key_live_test", search.getConfiguration().getBranchKey());
+    }
+
+    @Test
+    public void testSetBranchConfigurationKeepsAdTracking() {
+        search.publishAdTracking(fetched("gaid", true));
+
+        // Would fetch null values again, if it started a fetch.
+        assertTrue(search.setBranchConfiguration(
+                new BranchConfiguration().setBranchKey("key_live_other")));
+        BranchConfiguration configuration = search.getConfiguration();
+        assertEquals("key_live_other", configuration.getBranchKey());
+        assertEquals("gaid", configuration.getGoogleAdID());
+        assertTrue(configuration.isAdTrackingLimited());
+        assertFalse(configuration.needsSync());
+    }
+
+    @Test
+    public void testAdTrackingIsPublishedWithNewConfiguration() {
+        BranchConfiguration before = search.getConfiguration();
+        String gaid = before.getGoogleAdID();
+        boolean limited = before.isAdTrackingLimited();
+
+        search.publishAdTracking(fetched("gaid", !limited));
+
+        // The published configuration never changes.
+        assertEquals(gaid, before.getGoogleAdID());
+        assertEquals(limited, before.isAdTrackingLimited());
+        BranchConfiguration after = search.getConfiguration();
+        assertNotSame(before, after);
+        assertEquals("gaid", after.getGoogleAdID());
+        assertEquals(!limited, after.isAdTrackingLimited());
+        assertEquals(before.getBranchKey(), after.getBranchKey());
+    }
+
+    @Test
+    public void testSetBranchConfigurationRejectsInvalidKey() {
+        BranchConfiguration current = search.getConfiguration();
+        assertFalse(search.setBranchConfiguration(
+                new BranchConfiguration().setBranchKey("invalid")));
+        assertSame(current, search.getConfiguration());
+    }
+
+    @NonNull
+    private static BranchConfiguration fetched(@NonNull String gaid, boolean limited) {
+        // Marks the values as just synced.
+        BranchConfiguration fetched = new BranchConfiguration()
+                .fetchAdTracking(RuntimeEnvironment.application);
+        fetched.setAdTracking(gaid, limited);
+        return fetched;
+    }
+}
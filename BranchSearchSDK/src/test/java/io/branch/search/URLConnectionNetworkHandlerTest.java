@@ -0,0 +1,62 @@
+package io.branch.search;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class URLConnectionNetworkHandlerTest {
+
+    @Test
+    public void testInvalidUrlDoesNotTakeASlot() {
+        URLConnectionNetworkHandler handler = URLConnectionNetworkHandler.initialize(
+                null, 1, BranchRequestPolicy.immediate());
+        List<Object> results = new ArrayList<>();
+        handler.executeGet("not a url", new RecordingParser(results));
+        handler.executeGet("neither is this", new RecordingParser(results));
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(0, handler.getRunningCount());
+        assertEquals(0, handler.getQueueDepth());
+        assertEquals(2, results.size());
+        for (Object result : results) {
+            assertTrue(result instanceof BranchSearchError);
+            assertEquals(BranchSearchError.ERR_CODE.BAD_REQUEST_ERR,
+                    ((BranchSearchError) result).getErrorCode());
+        }
+    }
+
+    private static class RecordingParser extends BranchResponseParser<JSONObject> {
+        private final List<Object> results;
+
+        RecordingParser(@NonNull List<Object> results) {
+            this.results = results;
+        }
+
+        @NonNull
+        @Override
+        JSONObject parse(@NonNull JSONObject response) {
+            return response;
+        }
+
+        @Override
+        void onResult(@NonNull JSONObject result) {
+            results.add(result);
+        }
+
+        @Override
+        void onError(@NonNull BranchSearchError error) {
+            results.add(error);
+        }
+    }
+}